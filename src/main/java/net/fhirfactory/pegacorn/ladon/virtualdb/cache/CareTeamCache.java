@@ -25,6 +25,7 @@ import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProp
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.CareTeam;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,16 @@ public class CareTeamCache  extends VirtualDBIdTypeBasedCacheBase {
         return(identifierList);
     }
 
+    @Override
+    protected List<Reference> resolveReferenceSet(Resource resource) {
+        List<Reference> referenceList = new ArrayList<>();
+        CareTeam careTeam = (CareTeam)resource;
+        if(careTeam.hasSubject()){
+            referenceList.add(careTeam.getSubject());
+        }
+        return(referenceList);
+    }
+
     @Override
     protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
         if(identifierToAdd == null || resource == null){
@@ -21,8 +21,11 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache;
 
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheBackendEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheStorageModeEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
@@ -35,6 +38,8 @@ import java.util.List;
 @ApplicationScoped
 public class DocumentReferenceCache extends VirtualDBIdTypeBasedCacheBase {
     private static final Logger LOG = LoggerFactory.getLogger(DocumentReferenceCache.class);
+    private static final int DOCUMENT_REFERENCE_RETIREMENT_IN_SECONDS = 60;
+    private static final int STABLE_DOCUMENT_REFERENCE_RETIREMENT_MULTIPLIER = 10;
 
     public DocumentReferenceCache(){
         super();
@@ -47,7 +52,41 @@ public class DocumentReferenceCache extends VirtualDBIdTypeBasedCacheBase {
 
     @Override
     protected int specifyCacheElementRetirementInSeconds() {
-        return 60;
+        return (DOCUMENT_REFERENCE_RETIREMENT_IN_SECONDS);
+    }
+
+    @Override
+    protected int specifyResourceRetirementInSeconds(Resource resource) {
+        // Superseded (or erroneous) references, and final documents, are stable - only working documents change
+        DocumentReference documentReference = (DocumentReference)resource;
+        boolean isStable = false;
+        if(documentReference.hasStatus() && documentReference.getStatus() != Enumerations.DocumentReferenceStatus.CURRENT){
+            isStable = true;
+        }
+        if(documentReference.hasDocStatus() && documentReference.getDocStatus() == DocumentReference.ReferredDocumentStatus.FINAL){
+            isStable = true;
+        }
+        if(isStable){
+            return (specifyCacheElementRetirementInSeconds() * STABLE_DOCUMENT_REFERENCE_RETIREMENT_MULTIPLIER);
+        }
+        return (specifyCacheElementRetirementInSeconds());
+    }
+
+    @Override
+    protected long specifyCacheMemoryBudgetInBytes() {
+        // Entries the off-heap store has no room for are held on the heap, and DocumentReferences can carry (large)
+        // attachments, so keep them on a tighter budget
+        return (32L * 1024L * 1024L);
+    }
+
+    @Override
+    protected VirtualDBCacheBackendEnum specifyCacheBackend() {
+        return (VirtualDBCacheBackendEnum.CAFFEINE);
+    }
+
+    @Override
+    protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode() {
+        return (VirtualDBCacheStorageModeEnum.OFF_HEAP);
     }
 
     @Override
@@ -88,12 +127,11 @@ public class DocumentReferenceCache extends VirtualDBIdTypeBasedCacheBase {
             return;
         }
         DocumentReference docRef = (DocumentReference)resource;
-        Object resourceLock = getResourceLock(resource.getIdElement());
-        synchronized (resourceLock){
-            DocumentReference modifiableDocRef = (DocumentReference)startResourceAttributeUpdate(docRef);
-            modifiableDocRef.addIdentifier(identifierToAdd);
-            finaliseResourceAttributeUpdate(modifiableDocRef);
-        }
+        // The modified copy is built without holding any lock; finaliseResourceAttributeUpdate() (syncResource())
+        // then swaps it into the cache as a single atomic entry replacement
+        DocumentReference modifiableDocRef = (DocumentReference)startResourceAttributeUpdate(docRef);
+        modifiableDocRef.addIdentifier(identifierToAdd);
+        finaliseResourceAttributeUpdate(modifiableDocRef);
     }
 
     @Override
@@ -22,9 +22,12 @@
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache;
 
 import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProperties;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheBackendEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheStorageModeEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +40,7 @@ import java.util.List;
 @ApplicationScoped
 public class EncounterCache extends VirtualDBIdTypeBasedCacheBase {
     private static final Logger LOG = LoggerFactory.getLogger(EncounterCache.class);
+    private static final int FINISHED_ENCOUNTER_RETIREMENT_MULTIPLIER = 10;
     @Inject
     LadonDefaultDeploymentProperties ladonProperties;
 
@@ -54,6 +58,38 @@ public class EncounterCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getEncounterCacheAgeThreshold());
     }
 
+    @Override
+    protected int specifyResourceRetirementInSeconds(Resource resource) {
+        // An Encounter that has finished (or never happened) won't change again, so there's little point re-loading it
+        Encounter encounter = (Encounter)resource;
+        if(encounter.hasStatus()){
+            switch(encounter.getStatus()){
+                case FINISHED:
+                case CANCELLED:
+                case ENTEREDINERROR:
+                    return (specifyCacheElementRetirementInSeconds() * FINISHED_ENCOUNTER_RETIREMENT_MULTIPLIER);
+                default:
+                    break;
+            }
+        }
+        return (specifyCacheElementRetirementInSeconds());
+    }
+
+    @Override
+    protected VirtualDBCacheBackendEnum specifyCacheBackend() {
+        return (VirtualDBCacheBackendEnum.CAFFEINE);
+    }
+
+    @Override
+    protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode() {
+        return (VirtualDBCacheStorageModeEnum.OFF_HEAP);
+    }
+
+    @Override
+    protected double specifyRefreshAheadFraction() {
+        return (0.75);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
@@ -86,6 +122,21 @@ public class EncounterCache extends VirtualDBIdTypeBasedCacheBase {
         return(identifierList);
     }
 
+    @Override
+    protected List<Reference> resolveReferenceSet(Resource resource) {
+        List<Reference> referenceList = new ArrayList<>();
+        Encounter encounter = (Encounter)resource;
+        if(encounter.hasSubject()){
+            referenceList.add(encounter.getSubject());
+        }
+        for(Encounter.EncounterLocationComponent currentLocation: encounter.getLocation()){
+            if(currentLocation.hasLocation()){
+                referenceList.add(currentLocation.getLocation());
+            }
+        }
+        return(referenceList);
+    }
+
     @Override
     protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
         if(identifierToAdd == null || resource == null){
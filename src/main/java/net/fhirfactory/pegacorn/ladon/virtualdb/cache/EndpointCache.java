@@ -54,6 +54,12 @@ public class EndpointCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getEndpointCacheAgeThreshold());
     }
 
+    @Override
+    protected boolean specifyCacheCompletenessTracking() {
+        // Endpoints are a small, slowly-changing set that is fully loaded at warm-up
+        return (true);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
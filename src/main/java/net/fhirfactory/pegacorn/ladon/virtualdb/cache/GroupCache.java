@@ -54,6 +54,12 @@ public class GroupCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getGroupCacheAgeThreshold());
     }
 
+    @Override
+    protected long specifyCacheMemoryBudgetInBytes() {
+        // Groups can carry very large member lists, so keep them on a tighter budget
+        return (16L * 1024L * 1024L);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
@@ -56,6 +56,12 @@ public class LocationCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getLocationCacheAgeThreshold());
     }
 
+    @Override
+    protected boolean specifyCacheCompletenessTracking() {
+        // Locations are a small, slowly-changing set that is fully loaded at warm-up
+        return (true);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
@@ -22,6 +22,8 @@
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache;
 
 import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProperties;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheBackendEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheStorageModeEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Identifier;
@@ -56,6 +58,21 @@ public class PatientCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getPatientCacheAgeThreshold());
     }
 
+    @Override
+    protected VirtualDBCacheBackendEnum specifyCacheBackend() {
+        return (VirtualDBCacheBackendEnum.CAFFEINE);
+    }
+
+    @Override
+    protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode() {
+        return (VirtualDBCacheStorageModeEnum.OFF_HEAP);
+    }
+
+    @Override
+    protected double specifyRefreshAheadFraction() {
+        return (0.75);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
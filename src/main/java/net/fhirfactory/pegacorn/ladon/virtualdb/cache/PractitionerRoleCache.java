@@ -25,6 +25,7 @@ import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProp
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.PractitionerRole;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,20 @@ public class PractitionerRoleCache extends VirtualDBIdTypeBasedCacheBase {
         return(identifierList);
     }
 
+    @Override
+    protected List<Reference> resolveReferenceSet(Resource resource) {
+        List<Reference> referenceList = new ArrayList<>();
+        PractitionerRole practitionerRole = (PractitionerRole)resource;
+        if(practitionerRole.hasPractitioner()){
+            referenceList.add(practitionerRole.getPractitioner());
+        }
+        if(practitionerRole.hasOrganization()){
+            referenceList.add(practitionerRole.getOrganization());
+        }
+        referenceList.addAll(practitionerRole.getLocation());
+        return(referenceList);
+    }
+
     @Override
     protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
         if(identifierToAdd == null || resource == null){
@@ -25,6 +25,7 @@ import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProp
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Procedure;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,19 @@ public class ProcedureCache extends VirtualDBIdTypeBasedCacheBase {
         return(identifierList);
     }
 
+    @Override
+    protected List<Reference> resolveReferenceSet(Resource resource) {
+        List<Reference> referenceList = new ArrayList<>();
+        Procedure proc = (Procedure)resource;
+        if(proc.hasSubject()){
+            referenceList.add(proc.getSubject());
+        }
+        if(proc.hasEncounter()){
+            referenceList.add(proc.getEncounter());
+        }
+        return(referenceList);
+    }
+
     @Override
     protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
         if(identifierToAdd == null || resource == null){
@@ -37,6 +37,7 @@ import java.util.List;
 @ApplicationScoped
 public class TaskCache extends VirtualDBIdTypeBasedCacheBase {
     private static final Logger LOG = LoggerFactory.getLogger(TaskCache.class);
+    private static final int FINISHED_TASK_RETIREMENT_MULTIPLIER = 10;
 
     @Inject
     LadonDefaultDeploymentProperties ladonProperties;
@@ -55,6 +56,25 @@ public class TaskCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getTaskCacheAgeThreshold());
     }
 
+    @Override
+    protected int specifyResourceRetirementInSeconds(Resource resource) {
+        // A Task that has reached a terminal status won't change again, so there's little point re-loading it
+        Task task = (Task)resource;
+        if(task.hasStatus()){
+            switch(task.getStatus()){
+                case COMPLETED:
+                case CANCELLED:
+                case FAILED:
+                case REJECTED:
+                case ENTEREDINERROR:
+                    return (specifyCacheElementRetirementInSeconds() * FINISHED_TASK_RETIREMENT_MULTIPLIER);
+                default:
+                    break;
+            }
+        }
+        return (specifyCacheElementRetirementInSeconds());
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
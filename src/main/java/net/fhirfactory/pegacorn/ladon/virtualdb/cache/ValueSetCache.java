@@ -22,6 +22,7 @@
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache;
 
 import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProperties;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheExpiryPolicyEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Resource;
@@ -37,6 +38,7 @@ import java.util.List;
 @ApplicationScoped
 public class ValueSetCache extends VirtualDBIdTypeBasedCacheBase {
     private static final Logger LOG = LoggerFactory.getLogger(ValueSetCache.class);
+    private static final int PUBLISHED_VALUE_SET_RETIREMENT_MULTIPLIER = 10;
 
     @Inject
     LadonDefaultDeploymentProperties ladonProperties;
@@ -55,6 +57,34 @@ public class ValueSetCache extends VirtualDBIdTypeBasedCacheBase {
         return (ladonProperties.getValueSetCacheAgeThreshold());
     }
 
+    @Override
+    protected boolean specifyCacheCompletenessTracking() {
+        // Terminology is a small, slowly-changing set that is fully loaded at warm-up
+        return (true);
+    }
+
+    @Override
+    protected int specifyResourceRetirementInSeconds(Resource resource) {
+        // Published (non-experimental) terminology rarely changes, only drafts are worth re-loading at the usual rate
+        ValueSet valueSet = (ValueSet)resource;
+        if(valueSet.hasStatus() && !valueSet.getExperimental()){
+            switch(valueSet.getStatus()){
+                case ACTIVE:
+                case RETIRED:
+                    return (specifyCacheElementRetirementInSeconds() * PUBLISHED_VALUE_SET_RETIREMENT_MULTIPLIER);
+                default:
+                    break;
+            }
+        }
+        return (specifyCacheElementRetirementInSeconds());
+    }
+
+    @Override
+    protected VirtualDBCacheExpiryPolicyEnum specifyCacheExpiryPolicy() {
+        // Keep terminology for as long as it is in use
+        return (VirtualDBCacheExpiryPolicyEnum.SLIDING);
+    }
+
     @Override
     protected boolean areTheSame(Resource a, Resource b) {
         if( a == null && b == null){
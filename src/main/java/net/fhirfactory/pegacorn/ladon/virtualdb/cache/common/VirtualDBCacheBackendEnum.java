@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * The storage implementations available to the VirtualDB Resource Caches. Each cache class selects one via
+ * specifyCacheBackend().
+ *
+ * CONCURRENT_MAP: an unbounded ConcurrentHashMap, with entries retired by the VirtualDBCacheExpiryService.
+ * CAFFEINE: a bounded Caffeine cache (W-TinyLFU admission/eviction) with its own expire-after-write handling.
+ */
+public enum VirtualDBCacheBackendEnum {
+    CONCURRENT_MAP,
+    CAFFEINE
+}
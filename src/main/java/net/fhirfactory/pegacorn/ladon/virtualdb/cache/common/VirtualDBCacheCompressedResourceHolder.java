@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Holds the Resource as its deflated JSON encoding (the COMPRESSED storage mode). A new Resource instance is
+ * decoded on every call to getResource(). The encoding excludes the Resource's own meta element (see
+ * VirtualDBCacheResourceCodec.encodeContent()), which is held as is and re-attached on decode.
+ */
+public class VirtualDBCacheCompressedResourceHolder implements VirtualDBCacheResourceHolder {
+    private byte[] compressedResource;
+    private int encodedLength;
+    private Meta meta;
+    private VirtualDBCacheResourceCodec resourceCodec;
+
+    public VirtualDBCacheCompressedResourceHolder(byte[] compressedResource, int encodedLength, Meta meta, VirtualDBCacheResourceCodec resourceCodec){
+        this.compressedResource = compressedResource;
+        this.encodedLength = encodedLength;
+        this.meta = meta;
+        this.resourceCodec = resourceCodec;
+    }
+
+    @Override
+    public Resource getResource() {
+        Resource resource = resourceCodec.decompress(compressedResource, encodedLength);
+        if(resource != null && meta != null){
+            resource.setMeta(meta.copy());
+        }
+        return (resource);
+    }
+
+    @Override
+    public int getStoredSize() {
+        return compressedResource.length;
+    }
+
+    @Override
+    public void release() {
+        // Nothing is held outside of the heap
+    }
+}
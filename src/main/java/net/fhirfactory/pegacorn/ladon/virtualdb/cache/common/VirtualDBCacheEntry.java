@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single entry within one of the VirtualDB Resource Caches. It wraps the Resource (via a
+ * VirtualDBCacheResourceHolder, as it may be held in an encoded form) along with the (coarse, monotonic) time at
+ * which it was added to the Cache, the time at which it should be retired, its "weight" (the estimated size of the
+ * Resource, in bytes, as held), the Identifier index keys it was indexed under, the (normalised) ids of the
+ * Resources it references, a digest of its content (see VirtualDBCacheResourceCodec.computeContentDigest()) and
+ * its meta element (which the digest excludes), so that change detection doesn't need the Resource itself.
+ *
+ * Times are those provided by VirtualDBCacheExpiryService.getCoarseTime() and are in milliseconds.
+ */
+public class VirtualDBCacheEntry {
+    private VirtualDBCacheResourceHolder resourceHolder;
+    private long entryTime;
+    private volatile long expiryTime;
+    private long retirementAge;
+    private int weight;
+    private List<VirtualDBIdentifierKey> identifierKeys;
+    private List<IdType> referencedIds;
+    private byte[] contentDigest;
+    private Meta meta;
+    private AtomicBoolean refreshClaimed;
+
+    public VirtualDBCacheEntry(Resource resource, long entryTime, long expiryTime){
+        this(new VirtualDBCacheObjectResourceHolder(resource), entryTime, expiryTime, 0, new ArrayList<>(), null);
+    }
+
+    public VirtualDBCacheEntry(VirtualDBCacheResourceHolder resourceHolder, long entryTime, long expiryTime, int weight, List<VirtualDBIdentifierKey> identifierKeys, byte[] contentDigest){
+        this(resourceHolder, entryTime, expiryTime, weight, identifierKeys, new ArrayList<>(), contentDigest);
+    }
+
+    public VirtualDBCacheEntry(VirtualDBCacheResourceHolder resourceHolder, long entryTime, long expiryTime, int weight, List<VirtualDBIdentifierKey> identifierKeys, List<IdType> referencedIds, byte[] contentDigest){
+        this(resourceHolder, entryTime, expiryTime, weight, identifierKeys, referencedIds, contentDigest, null);
+    }
+
+    public VirtualDBCacheEntry(VirtualDBCacheResourceHolder resourceHolder, long entryTime, long expiryTime, int weight, List<VirtualDBIdentifierKey> identifierKeys, List<IdType> referencedIds, byte[] contentDigest, Meta meta){
+        this.resourceHolder = resourceHolder;
+        this.entryTime = entryTime;
+        this.expiryTime = expiryTime;
+        this.retirementAge = expiryTime - entryTime;
+        this.weight = weight;
+        this.identifierKeys = identifierKeys;
+        this.referencedIds = referencedIds;
+        this.contentDigest = contentDigest;
+        this.meta = meta;
+        this.refreshClaimed = new AtomicBoolean(false);
+    }
+
+    public Resource getResource() {
+        return resourceHolder.getResource();
+    }
+
+    public VirtualDBCacheResourceHolder getResourceHolder() {
+        return resourceHolder;
+    }
+
+    public List<VirtualDBIdentifierKey> getIdentifierKeys() {
+        return identifierKeys;
+    }
+
+    /**
+     * @return The (normalised, ResourceType/idPart) ids of the Resources this entry's Resource references
+     */
+    public List<IdType> getReferencedIds() {
+        return referencedIds;
+    }
+
+    /**
+     * @return The digest of the Resource's content, or null if one wasn't computed
+     */
+    public byte[] getContentDigest() {
+        return contentDigest;
+    }
+
+    /**
+     * @return The Resource's meta element as it was when cached, or null if it had none (or it wasn't captured)
+     */
+    public Meta getMeta() {
+        return meta;
+    }
+
+    public long getEntryTime() {
+        return entryTime;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * @return The lifetime (in milliseconds) the entry was given when it was created - which, as it may be derived
+     * from the Resource's content, can differ between entries of the same cache
+     */
+    public long getRetirementAge() {
+        return retirementAge;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Claims the (refresh-ahead) reload of this entry, so that only one reader triggers it.
+     *
+     * @return True if the caller now owns the refresh, false if it has already been claimed
+     */
+    public boolean claimRefresh(){
+        return(refreshClaimed.compareAndSet(false, true));
+    }
+
+    public void clearRefreshClaim(){
+        refreshClaimed.set(false);
+    }
+
+    public boolean hasExpired(long currentTime){
+        return(currentTime >= this.expiryTime);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * The reasons an entry leaves a VirtualDB Resource Cache, as counted by VirtualDBCacheStatistics.
+ *
+ * EXPIRED: the entry reached its retirement age.
+ * SIZE: the cache exceeded its own size (or memory) budget.
+ * MEMORY_PRESSURE: the VirtualDBCacheMemoryManager reclaimed space across all caches.
+ * REMOVED: the Resource was explicitly deleted from the cache.
+ * INVALIDATED: the Resource was changed on another Ladon node (see VirtualDBCacheInvalidationService).
+ */
+public enum VirtualDBCacheEvictionCauseEnum {
+    EXPIRED,
+    SIZE,
+    MEMORY_PRESSURE,
+    REMOVED,
+    INVALIDATED
+}
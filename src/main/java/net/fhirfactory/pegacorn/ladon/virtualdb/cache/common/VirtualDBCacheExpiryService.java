@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The expiry (house-keeping) engine shared by all the VirtualDB Resource Caches.
+ *
+ * Rather than each cache scanning its full content on every write, caches schedule each new entry against a
+ * hashed timer wheel (an O(1) operation). A single background thread advances a coarse, monotonic clock once
+ * per tick and drains only the wheel bucket(s) for the elapsed tick(s), asking the owning cache to retire any
+ * entry that has reached its expiry time. Entries whose expiry time lies beyond the current revolution of the
+ * wheel (or has been extended) are simply re-scheduled.
+ *
+ * The wheel holds each entry only weakly (alongside its key and scheduled expiry time), so an entry that has been
+ * replaced or removed from its cache - and with it, its Resource - can be garbage collected straight away, rather
+ * than being pinned by the wheel until its original expiry tick.
+ */
+@ApplicationScoped
+public class VirtualDBCacheExpiryService {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheExpiryService.class);
+
+    private static final long TICK_DURATION_IN_MILLISECONDS = 250;
+    private static final int WHEEL_SIZE = 512;
+
+    private ScheduledExecutorService housekeepingExecutor;
+    private List<ConcurrentLinkedQueue<ExpiryItem<?>>> wheel;
+    private long clockOrigin;
+    private volatile long coarseTime;
+    private long lastProcessedTick;
+    private boolean isInitialised;
+
+    public VirtualDBCacheExpiryService(){
+        this.wheel = new ArrayList<>(WHEEL_SIZE);
+        for(int counter = 0; counter < WHEEL_SIZE; counter++){
+            this.wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        this.clockOrigin = System.nanoTime();
+        this.coarseTime = 0;
+        this.lastProcessedTick = 0;
+        this.isInitialised = false;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        if(!this.isInitialised) {
+            LOG.debug(".initialise(): Starting the Cache house-keeping thread");
+            this.housekeepingExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread housekeepingThread = new Thread(runnable, "VirtualDB-Cache-Housekeeping");
+                housekeepingThread.setDaemon(true);
+                return (housekeepingThread);
+            });
+            this.housekeepingExecutor.scheduleAtFixedRate(this::performHousekeeping, TICK_DURATION_IN_MILLISECONDS, TICK_DURATION_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+            this.isInitialised = true;
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        LOG.debug(".shutdown(): Stopping the Cache house-keeping thread");
+        if(this.housekeepingExecutor != null){
+            this.housekeepingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the coarse, monotonic clock used for all cache entry ages. It is only advanced by the
+     * house-keeping thread (once per tick), so reading it is just a volatile read.
+     *
+     * @return The current coarse time in milliseconds
+     */
+    public long getCoarseTime(){
+        return(this.coarseTime);
+    }
+
+    /**
+     * Schedules the entry to be retired (via the target's expireCacheEntry() method) once the coarse clock
+     * reaches the entry's expiry time.
+     *
+     * @param target The cache holding the entry
+     * @param key The key the entry is stored against within the cache
+     * @param entry The cache entry
+     * @param <K> The type of the key used by the cache
+     */
+    public <K> void scheduleExpiry(VirtualDBCacheExpiryTarget<K> target, K key, VirtualDBCacheEntry entry){
+        if(target == null || key == null || entry == null){
+            return;
+        }
+        ExpiryItem<K> item = new ExpiryItem<>(target, key, entry);
+        // Never schedule into a bucket the house-keeping thread may have already passed for this revolution
+        long scheduleTime = Math.max(entry.getExpiryTime(), getCoarseTime() + TICK_DURATION_IN_MILLISECONDS);
+        wheel.get(bucketFor(scheduleTime)).offer(item);
+    }
+
+    private int bucketFor(long time){
+        long tick = time / TICK_DURATION_IN_MILLISECONDS;
+        return((int)(tick % WHEEL_SIZE));
+    }
+
+    private void advanceClock(){
+        this.coarseTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - clockOrigin);
+    }
+
+    /**
+     * Advances the coarse clock and drains the wheel bucket for each tick that has elapsed since the last
+     * run. If the thread has fallen behind by more than a full revolution, each bucket is drained just once.
+     */
+    protected void performHousekeeping(){
+        try {
+            advanceClock();
+            long currentTime = getCoarseTime();
+            long currentTick = currentTime / TICK_DURATION_IN_MILLISECONDS;
+            long firstTick = Math.max(lastProcessedTick + 1, currentTick - WHEEL_SIZE + 1);
+            for (long tick = firstTick; tick <= currentTick; tick++) {
+                drainBucket((int) (tick % WHEEL_SIZE), currentTime);
+            }
+            lastProcessedTick = currentTick;
+        } catch(Exception ex){
+            LOG.error(".performHousekeeping(): Cache house-keeping failed, error --> {}", ex.getMessage(), ex);
+        }
+    }
+
+    private void drainBucket(int bucket, long currentTime){
+        List<ExpiryItem<?>> deferredItems = new ArrayList<>();
+        ConcurrentLinkedQueue<ExpiryItem<?>> bucketQueue = wheel.get(bucket);
+        ExpiryItem<?> item = bucketQueue.poll();
+        while(item != null){
+            if(item.getScheduledExpiryTime() > currentTime){
+                requeue(item, bucket, deferredItems);
+            } else {
+                VirtualDBCacheEntry entry = item.getEntry();
+                if(entry == null){
+                    // Replaced or removed (and since collected), so there is nothing left to retire
+                } else if(entry.getExpiryTime() <= currentTime){
+                    item.expire(entry);
+                } else {
+                    // The entry's expiry has been extended since it was scheduled
+                    item.setScheduledExpiryTime(entry.getExpiryTime());
+                    requeue(item, bucket, deferredItems);
+                }
+            }
+            item = bucketQueue.poll();
+        }
+        bucketQueue.addAll(deferredItems);
+    }
+
+    private void requeue(ExpiryItem<?> item, int currentBucket, List<ExpiryItem<?>> deferredItems){
+        int targetBucket = bucketFor(item.getScheduledExpiryTime());
+        if(targetBucket == currentBucket){
+            // Not due until a later revolution of the wheel, hold it back until this bucket is drained
+            deferredItems.add(item);
+        } else {
+            wheel.get(targetBucket).offer(item);
+        }
+    }
+
+    /**
+     * @return The number of entries currently scheduled on the wheel (including those no longer in their cache)
+     */
+    public long getScheduledCount(){
+        long scheduledCount = 0;
+        for(ConcurrentLinkedQueue<ExpiryItem<?>> bucketQueue: wheel){
+            scheduledCount += bucketQueue.size();
+        }
+        return(scheduledCount);
+    }
+
+    private static class ExpiryItem<K> {
+        private VirtualDBCacheExpiryTarget<K> target;
+        private K key;
+        private WeakReference<VirtualDBCacheEntry> entryReference;
+        private long scheduledExpiryTime;
+
+        ExpiryItem(VirtualDBCacheExpiryTarget<K> target, K key, VirtualDBCacheEntry entry){
+            this.target = target;
+            this.key = key;
+            this.entryReference = new WeakReference<>(entry);
+            this.scheduledExpiryTime = entry.getExpiryTime();
+        }
+
+        VirtualDBCacheEntry getEntry(){
+            return(entryReference.get());
+        }
+
+        long getScheduledExpiryTime(){
+            return(scheduledExpiryTime);
+        }
+
+        void setScheduledExpiryTime(long scheduledExpiryTime){
+            this.scheduledExpiryTime = scheduledExpiryTime;
+        }
+
+        void expire(VirtualDBCacheEntry entry){
+            target.expireCacheEntry(key, entry);
+        }
+    }
+}
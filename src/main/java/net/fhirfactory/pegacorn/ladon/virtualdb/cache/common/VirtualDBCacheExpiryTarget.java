@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * Implemented by the VirtualDB Resource Caches so that the VirtualDBCacheExpiryService can retire their
+ * entries once they reach their expiry time.
+ *
+ * @param <K> The type of the key used by the Cache to store its entries
+ */
+public interface VirtualDBCacheExpiryTarget<K> {
+
+    /**
+     * Called (on the housekeeping thread) when an entry scheduled for expiry has reached its expiry time. The
+     * implementation should only remove the entry if it is still the one held against the key, as it may
+     * have been replaced since it was scheduled.
+     *
+     * @param key The key the entry was stored against
+     * @param entry The entry that has expired
+     */
+    void expireCacheEntry(K key, VirtualDBCacheEntry entry);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.Identifier;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Announces that a Resource has been created, updated or deleted on one Ladon node, so that the other nodes can
+ * discard any (now stale) copies of it from their caches. The Resource is named by its (IdType) id part and/or its
+ * Identifiers, as either may be what the other nodes have cached it against.
+ */
+public class VirtualDBCacheInvalidationMessage implements Serializable {
+    private String originNodeId;
+    private String resourceType;
+    private String resourceIdPart;
+    private ArrayList<Identifier> identifiers;
+
+    public VirtualDBCacheInvalidationMessage(){
+        this.identifiers = new ArrayList<>();
+    }
+
+    public VirtualDBCacheInvalidationMessage(String originNodeId, String resourceType, String resourceIdPart, List<Identifier> identifiers){
+        this.originNodeId = originNodeId;
+        this.resourceType = resourceType;
+        this.resourceIdPart = resourceIdPart;
+        this.identifiers = new ArrayList<>();
+        if(identifiers != null){
+            this.identifiers.addAll(identifiers);
+        }
+    }
+
+    /**
+     * @return A copy of this message (including copies of its Identifiers), which can be altered without
+     * affecting this one
+     */
+    public VirtualDBCacheInvalidationMessage copy(){
+        VirtualDBCacheInvalidationMessage messageCopy = new VirtualDBCacheInvalidationMessage(originNodeId, resourceType, resourceIdPart, null);
+        for(Identifier currentIdentifier: identifiers){
+            messageCopy.identifiers.add(currentIdentifier.copy());
+        }
+        return(messageCopy);
+    }
+
+    public String getOriginNodeId() {
+        return originNodeId;
+    }
+
+    public void setOriginNodeId(String originNodeId) {
+        this.originNodeId = originNodeId;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public String getResourceIdPart() {
+        return resourceIdPart;
+    }
+
+    public void setResourceIdPart(String resourceIdPart) {
+        this.resourceIdPart = resourceIdPart;
+    }
+
+    public List<Identifier> getIdentifiers() {
+        return identifiers;
+    }
+
+    public void setIdentifiers(List<Identifier> identifiers) {
+        this.identifiers = new ArrayList<>();
+        if(identifiers != null){
+            this.identifiers.addAll(identifiers);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBCacheInvalidationMessage{" +
+                "originNodeId=" + originNodeId +
+                ", resourceType=" + resourceType +
+                ", resourceIdPart=" + resourceIdPart +
+                ", identifierCount=" + identifiers.size() +
+                '}';
+    }
+}
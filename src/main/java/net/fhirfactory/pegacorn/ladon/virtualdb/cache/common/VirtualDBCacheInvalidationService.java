@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the VirtualDB Resource Caches of several Ladon nodes (e.g. instances behind a load balancer) consistent.
+ * When a Resource is created, updated or deleted via a node's ResourceDBEngine, the engine publishes an
+ * invalidation; each other node then discards its cached copy of the Resource (and any cached searches of its type)
+ * so that its next read goes back to the Sources-of-Truth, rather than serving the stale copy until it expires.
+ *
+ * The messages travel over a pluggable VirtualDBCacheInvalidationTransport. The default is the in-JVM transport,
+ * which (with only one node per JVM) reaches no peers; a deployment with several nodes sets a networked transport
+ * via setTransport().
+ */
+@ApplicationScoped
+public class VirtualDBCacheInvalidationService {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheInvalidationService.class);
+
+    private String nodeId;
+    private ConcurrentHashMap<String, VirtualDBIdTypeBasedCacheBase> registeredCaches;
+    private VirtualDBCacheInvalidationTransport transport;
+    private Consumer<VirtualDBCacheInvalidationMessage> subscriber;
+    private boolean isInitialised;
+
+    public VirtualDBCacheInvalidationService(){
+        this.nodeId = UUID.randomUUID().toString();
+        this.registeredCaches = new ConcurrentHashMap<>();
+        this.subscriber = this::applyInvalidation;
+        this.isInitialised = false;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        if(!this.isInitialised){
+            LOG.debug(".initialise(): Entry, nodeId --> {}", nodeId);
+            if(transport == null){
+                setTransport(new VirtualDBInJVMCacheInvalidationTransport());
+            }
+            this.isInitialised = true;
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        if(transport != null){
+            transport.unsubscribe(subscriber);
+        }
+    }
+
+    /**
+     * Replaces the transport used to exchange invalidations with the other nodes.
+     *
+     * @param newTransport The transport to be used
+     */
+    public synchronized void setTransport(VirtualDBCacheInvalidationTransport newTransport){
+        LOG.debug(".setTransport(): Entry, transport --> {}", newTransport);
+        if(transport != null){
+            transport.unsubscribe(subscriber);
+        }
+        this.transport = newTransport;
+        if(transport != null){
+            transport.subscribe(subscriber);
+        }
+    }
+
+    public VirtualDBCacheInvalidationTransport getTransport() {
+        return transport;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void registerCache(VirtualDBIdTypeBasedCacheBase cache){
+        if(cache != null) {
+            LOG.debug(".registerCache(): Registering cache --> {}", cache.getCacheClassName());
+            registeredCaches.put(cache.getCacheClassName(), cache);
+        }
+    }
+
+    /**
+     * Tells the other nodes that a Resource has changed on this node.
+     *
+     * @param resourceType The type of the Resource (as per the cache's getCacheClassName())
+     * @param id The id of the Resource, or null if it isn't known
+     * @param identifiers The Identifiers of the Resource
+     */
+    public void publishInvalidation(String resourceType, IdType id, List<Identifier> identifiers){
+        VirtualDBCacheInvalidationTransport currentTransport = transport;
+        if(currentTransport == null){
+            return;
+        }
+        String idPart = null;
+        if(id != null && id.hasIdPart()){
+            idPart = id.getIdPart();
+        }
+        VirtualDBCacheInvalidationMessage message = new VirtualDBCacheInvalidationMessage(nodeId, resourceType, idPart, identifiers);
+        LOG.trace(".publishInvalidation(): Publishing --> {}", message);
+        try {
+            currentTransport.publish(message);
+        } catch (Exception ex) {
+            LOG.warn(".publishInvalidation(): Could not publish invalidation --> {}, error --> {}", message, ex.getMessage());
+        }
+    }
+
+    /**
+     * Applies an invalidation received from another node to the matching local cache (if this node caches that
+     * Resource type).
+     *
+     * @param message The invalidation
+     */
+    protected void applyInvalidation(VirtualDBCacheInvalidationMessage message){
+        if(message == null || nodeId.equals(message.getOriginNodeId())){
+            return;
+        }
+        VirtualDBIdTypeBasedCacheBase cache = registeredCaches.get(message.getResourceType());
+        if(cache == null){
+            return;
+        }
+        LOG.debug(".applyInvalidation(): Applying --> {}", message);
+        IdType id = null;
+        if(message.getResourceIdPart() != null){
+            id = new IdType(message.getResourceType(), message.getResourceIdPart());
+        }
+        cache.invalidateResource(id, message.getIdentifiers());
+    }
+}
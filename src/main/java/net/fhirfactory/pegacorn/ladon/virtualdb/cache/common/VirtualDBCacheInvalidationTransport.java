@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.util.function.Consumer;
+
+/**
+ * The channel over which VirtualDBCacheInvalidationMessages are exchanged between Ladon nodes. A message published
+ * by a node is delivered to every subscriber on the channel - including the publishing node's own, so subscribers
+ * are expected to ignore their own messages (see VirtualDBCacheInvalidationMessage.getOriginNodeId()).
+ *
+ * Delivery is best-effort: a missed message only means a peer serves its cached copy until that copy expires.
+ */
+public interface VirtualDBCacheInvalidationTransport {
+
+    /**
+     * @param message The invalidation to be sent to all nodes on the channel
+     */
+    void publish(VirtualDBCacheInvalidationMessage message);
+
+    /**
+     * @param subscriber To be called with each message received from the channel
+     */
+    void subscribe(Consumer<VirtualDBCacheInvalidationMessage> subscriber);
+
+    /**
+     * @param subscriber A subscriber previously passed to subscribe(), which is to receive no further messages
+     */
+    void unsubscribe(Consumer<VirtualDBCacheInvalidationMessage> subscriber);
+}
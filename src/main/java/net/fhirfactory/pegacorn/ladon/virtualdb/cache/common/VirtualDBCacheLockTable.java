@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * A fixed-size table of lock objects, shared (by hash) across all the keys of a cache. Unlike a lock per key,
+ * the table's memory is constant and nothing has to be created or purged as Resources come and go. Keys that
+ * share a stripe also share a lock, so the table is sized well above the number of threads likely to contend.
+ */
+public class VirtualDBCacheLockTable {
+    private static final int DEFAULT_STRIPES_PER_PROCESSOR = 64;
+
+    private final Object[] lockStripes;
+    private final int stripeMask;
+
+    public VirtualDBCacheLockTable(){
+        this(Runtime.getRuntime().availableProcessors() * DEFAULT_STRIPES_PER_PROCESSOR);
+    }
+
+    public VirtualDBCacheLockTable(int minimumStripeCount){
+        int stripeCount = 1;
+        while(stripeCount < minimumStripeCount){
+            stripeCount = stripeCount << 1;
+        }
+        this.lockStripes = new Object[stripeCount];
+        for(int stripe = 0; stripe < stripeCount; stripe++){
+            lockStripes[stripe] = new Object();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * @param key The key to be locked
+     * @return The lock object for the key's stripe (always the same object for equal keys)
+     */
+    public Object getLock(Object key){
+        if(key == null){
+            return(lockStripes[0]);
+        }
+        int hash = key.hashCode();
+        // Spread the hash so keys differing only in their upper bits don't all land on the same stripe
+        hash = hash ^ (hash >>> 16);
+        hash = hash * 0x45d9f3b;
+        hash = hash ^ (hash >>> 16);
+        return(lockStripes[hash & stripeMask]);
+    }
+
+    public int getStripeCount(){
+        return(lockStripes.length);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the (estimated, encoded) size of the content of all the VirtualDB Resource Caches and enforces a global
+ * budget across them. Each cache also enforces its own budget; this class covers the case where the caches are
+ * individually within budget but collectively too large. When that happens, content is shed from the largest
+ * caches first. The global budget defaults to a tenth of the maximum heap, and can be set at deployment via the
+ * LADON_VIRTUALDB_CACHE_GLOBAL_MEMORY_BUDGET_IN_BYTES setting (see VirtualDBCacheSettings).
+ */
+@ApplicationScoped
+public class VirtualDBCacheMemoryManager {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheMemoryManager.class);
+
+    // The global budget (in encoded bytes) as a fraction of the maximum heap. The in-memory (object graph) form
+    // of a Resource is several times larger than its encoding.
+    private static final long DEFAULT_GLOBAL_BUDGET_HEAP_DIVISOR = 10;
+    // Overrides the default global budget (in bytes) at deployment, see VirtualDBCacheSettings
+    public static final String GLOBAL_BUDGET_SETTING = VirtualDBCacheSettings.SETTING_PREFIX + "CACHE_GLOBAL_MEMORY_BUDGET_IN_BYTES";
+    // When shedding content, go a little below the budget so we aren't reclaiming on every subsequent insert.
+    private static final double RECLAIM_TARGET_FRACTION = 0.95;
+
+    private CopyOnWriteArrayList<VirtualDBIdTypeBasedCacheBase> registeredCaches;
+    private AtomicLong totalCacheWeight;
+    private AtomicBoolean reclaimInProgress;
+    private long globalBudgetInBytes;
+
+    public VirtualDBCacheMemoryManager(){
+        this.registeredCaches = new CopyOnWriteArrayList<>();
+        this.totalCacheWeight = new AtomicLong(0);
+        this.reclaimInProgress = new AtomicBoolean(false);
+        this.globalBudgetInBytes = VirtualDBCacheSettings.resolveLongSetting(GLOBAL_BUDGET_SETTING, Runtime.getRuntime().maxMemory() / DEFAULT_GLOBAL_BUDGET_HEAP_DIVISOR);
+    }
+
+    public void registerCache(VirtualDBIdTypeBasedCacheBase cache){
+        if(cache != null && !registeredCaches.contains(cache)) {
+            LOG.debug(".registerCache(): Registering cache --> {}", cache.getCacheClassName());
+            registeredCaches.add(cache);
+        }
+    }
+
+    public long getGlobalBudgetInBytes() {
+        return globalBudgetInBytes;
+    }
+
+    public void setGlobalBudgetInBytes(long globalBudgetInBytes) {
+        this.globalBudgetInBytes = globalBudgetInBytes;
+    }
+
+    public long getTotalCacheWeight(){
+        return(totalCacheWeight.get());
+    }
+
+    /**
+     * Called by the caches whenever their content changes. If the change takes the total over the global budget,
+     * content is reclaimed from the (largest) caches.
+     *
+     * @param weightDelta The change in the (estimated, encoded) size of a cache's content
+     */
+    public void recordWeightChange(long weightDelta){
+        long totalWeight = totalCacheWeight.addAndGet(weightDelta);
+        if(weightDelta > 0 && totalWeight > globalBudgetInBytes){
+            reclaim();
+        }
+    }
+
+    private void reclaim(){
+        if(!reclaimInProgress.compareAndSet(false, true)){
+            // Someone else is already doing it
+            return;
+        }
+        try {
+            long excessWeight = totalCacheWeight.get() - (long)(globalBudgetInBytes * RECLAIM_TARGET_FRACTION);
+            LOG.debug(".reclaim(): Global cache budget exceeded, reclaiming --> {} bytes", excessWeight);
+            List<VirtualDBIdTypeBasedCacheBase> cachesBySize = new ArrayList<>(registeredCaches);
+            cachesBySize.sort(Comparator.comparingLong(VirtualDBIdTypeBasedCacheBase::getCacheWeight).reversed());
+            for(VirtualDBIdTypeBasedCacheBase cache: cachesBySize){
+                if(excessWeight <= 0){
+                    break;
+                }
+                excessWeight -= cache.shedCacheWeight(excessWeight, VirtualDBCacheEvictionCauseEnum.MEMORY_PRESSURE);
+            }
+        } finally {
+            reclaimInProgress.set(false);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * Exposes the VirtualDBCacheStatistics, size and search-result cache counters of a single VirtualDB Resource Cache
+ * as a (standard) MBean, along with the figures of the off-heap store (which is shared by all the caches, so its
+ * "OffHeapStore" attributes are the same on every cache's MBean). Each cache registers one of these with the
+ * platform MBeanServer when it is initialised, under the name
+ * "net.fhirfactory.pegacorn.ladon:type=VirtualDBCache,name=[cache class name]".
+ */
+public class VirtualDBCacheMonitor implements VirtualDBCacheMonitorMBean {
+    public static final String OBJECT_NAME_PREFIX = "net.fhirfactory.pegacorn.ladon:type=VirtualDBCache,name=";
+
+    private VirtualDBIdTypeBasedCacheBase cache;
+
+    public VirtualDBCacheMonitor(VirtualDBIdTypeBasedCacheBase cache){
+        this.cache = cache;
+    }
+
+    @Override
+    public String getCacheName() {
+        return(cache.getCacheClassName());
+    }
+
+    @Override
+    public long getHitCount() {
+        return(cache.getCacheStatistics().getHitCount());
+    }
+
+    @Override
+    public long getMissCount() {
+        return(cache.getCacheStatistics().getMissCount());
+    }
+
+    @Override
+    public double getHitRate() {
+        return(cache.getCacheStatistics().getHitRate());
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return(cache.getCacheStatistics().getLoadSuccessCount());
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return(cache.getCacheStatistics().getLoadFailureCount());
+    }
+
+    @Override
+    public long getTotalLoadTimeInMilliseconds() {
+        return(cache.getCacheStatistics().getTotalLoadTimeInMilliseconds());
+    }
+
+    @Override
+    public double getAverageLoadTimeInMilliseconds() {
+        return(cache.getCacheStatistics().getAverageLoadTimeInMilliseconds());
+    }
+
+    @Override
+    public long getExpiredEvictionCount() {
+        return(cache.getCacheStatistics().getEvictionCount(VirtualDBCacheEvictionCauseEnum.EXPIRED));
+    }
+
+    @Override
+    public long getSizeEvictionCount() {
+        return(cache.getCacheStatistics().getEvictionCount(VirtualDBCacheEvictionCauseEnum.SIZE));
+    }
+
+    @Override
+    public long getMemoryPressureEvictionCount() {
+        return(cache.getCacheStatistics().getEvictionCount(VirtualDBCacheEvictionCauseEnum.MEMORY_PRESSURE));
+    }
+
+    @Override
+    public long getRemovalCount() {
+        return(cache.getCacheStatistics().getEvictionCount(VirtualDBCacheEvictionCauseEnum.REMOVED));
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return(cache.getCacheStatistics().getEvictionCount(VirtualDBCacheEvictionCauseEnum.INVALIDATED));
+    }
+
+    @Override
+    public long getEntryCount() {
+        return(cache.getCacheEntryCount());
+    }
+
+    @Override
+    public long getEstimatedSizeInBytes() {
+        return(cache.getCacheWeight());
+    }
+
+    @Override
+    public boolean isCacheComplete() {
+        return(cache.isCacheComplete());
+    }
+
+    @Override
+    public long getCacheSearchCount() {
+        return(cache.getCacheStatistics().getCacheSearchCount());
+    }
+
+    @Override
+    public long getSourceOfTruthSearchCount() {
+        return(cache.getCacheStatistics().getSourceOfTruthSearchCount());
+    }
+
+    @Override
+    public long getSearchResultCacheEntryCount() {
+        VirtualDBSearchResultCache searchResultCache = cache.getSearchResultCache();
+        if(searchResultCache == null){
+            return(0);
+        }
+        return(searchResultCache.getEntryCount());
+    }
+
+    @Override
+    public long getSearchResultCacheHitCount() {
+        VirtualDBSearchResultCache searchResultCache = cache.getSearchResultCache();
+        if(searchResultCache == null){
+            return(0);
+        }
+        return(searchResultCache.getHitCount());
+    }
+
+    @Override
+    public long getSearchResultCacheMissCount() {
+        VirtualDBSearchResultCache searchResultCache = cache.getSearchResultCache();
+        if(searchResultCache == null){
+            return(0);
+        }
+        return(searchResultCache.getMissCount());
+    }
+
+    @Override
+    public long getSearchResultCacheInvalidationCount() {
+        VirtualDBSearchResultCache searchResultCache = cache.getSearchResultCache();
+        if(searchResultCache == null){
+            return(0);
+        }
+        return(searchResultCache.getInvalidationCount());
+    }
+
+    @Override
+    public long getSearchResultCacheEvictionCount() {
+        VirtualDBSearchResultCache searchResultCache = cache.getSearchResultCache();
+        if(searchResultCache == null){
+            return(0);
+        }
+        return(searchResultCache.getEvictionCount());
+    }
+
+    @Override
+    public long getOffHeapAllocationCount() {
+        return(cache.getCacheStatistics().getOffHeapAllocationCount());
+    }
+
+    @Override
+    public long getOffHeapAllocationFailureCount() {
+        return(cache.getCacheStatistics().getOffHeapAllocationFailureCount());
+    }
+
+    @Override
+    public long getOffHeapStoreCapacityInBytes() {
+        VirtualDBCacheOffHeapStore offHeapStore = cache.getOffHeapStore();
+        if(offHeapStore == null){
+            return(0);
+        }
+        return(offHeapStore.getCapacityInBytes());
+    }
+
+    @Override
+    public long getOffHeapStoreReservedBytes() {
+        VirtualDBCacheOffHeapStore offHeapStore = cache.getOffHeapStore();
+        if(offHeapStore == null){
+            return(0);
+        }
+        return(offHeapStore.getReservedBytes());
+    }
+
+    @Override
+    public long getOffHeapStoreUsedBytes() {
+        VirtualDBCacheOffHeapStore offHeapStore = cache.getOffHeapStore();
+        if(offHeapStore == null){
+            return(0);
+        }
+        return(offHeapStore.getUsedBytes());
+    }
+
+    @Override
+    public long getOffHeapStoreBlockCount() {
+        VirtualDBCacheOffHeapStore offHeapStore = cache.getOffHeapStore();
+        if(offHeapStore == null){
+            return(0);
+        }
+        return(offHeapStore.getBlockCount());
+    }
+
+    @Override
+    public long getOffHeapStoreAllocationFailureCount() {
+        VirtualDBCacheOffHeapStore offHeapStore = cache.getOffHeapStore();
+        if(offHeapStore == null){
+            return(0);
+        }
+        return(offHeapStore.getAllocationFailureCount());
+    }
+}
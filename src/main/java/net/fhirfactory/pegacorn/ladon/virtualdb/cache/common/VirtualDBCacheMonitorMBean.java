@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * The JMX management interface of a VirtualDB Resource Cache - see VirtualDBCacheMonitor.
+ */
+public interface VirtualDBCacheMonitorMBean {
+    String getCacheName();
+    long getHitCount();
+    long getMissCount();
+    double getHitRate();
+    long getLoadSuccessCount();
+    long getLoadFailureCount();
+    long getTotalLoadTimeInMilliseconds();
+    double getAverageLoadTimeInMilliseconds();
+    long getExpiredEvictionCount();
+    long getSizeEvictionCount();
+    long getMemoryPressureEvictionCount();
+    long getRemovalCount();
+    long getInvalidationCount();
+    long getEntryCount();
+    long getEstimatedSizeInBytes();
+    boolean isCacheComplete();
+    long getCacheSearchCount();
+    long getSourceOfTruthSearchCount();
+    long getSearchResultCacheEntryCount();
+    long getSearchResultCacheHitCount();
+    long getSearchResultCacheMissCount();
+    long getSearchResultCacheInvalidationCount();
+    long getSearchResultCacheEvictionCount();
+    long getOffHeapAllocationCount();
+    long getOffHeapAllocationFailureCount();
+    long getOffHeapStoreCapacityInBytes();
+    long getOffHeapStoreReservedBytes();
+    long getOffHeapStoreUsedBytes();
+    long getOffHeapStoreBlockCount();
+    long getOffHeapStoreAllocationFailureCount();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A handle to a block of off-heap memory allocated by the VirtualDBCacheOffHeapStore.
+ */
+public class VirtualDBCacheOffHeapBlock {
+    private ByteBuffer slab;
+    private int offset;
+    private int capacity;
+    private int length;
+    private int sizeClassIndex;
+    private int slotNumber;
+
+    VirtualDBCacheOffHeapBlock(ByteBuffer slab, int offset, int capacity, int length, int sizeClassIndex, int slotNumber){
+        this.slab = slab;
+        this.offset = offset;
+        this.capacity = capacity;
+        this.length = length;
+        this.sizeClassIndex = sizeClassIndex;
+        this.slotNumber = slotNumber;
+    }
+
+    ByteBuffer getSlab() {
+        return slab;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getSizeClassIndex() {
+        return sizeClassIndex;
+    }
+
+    int getSlotNumber() {
+        return slotNumber;
+    }
+
+    /**
+     * @return The number of off-heap bytes reserved for this block
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes of content held in this block
+     */
+    public int getLength() {
+        return length;
+    }
+}
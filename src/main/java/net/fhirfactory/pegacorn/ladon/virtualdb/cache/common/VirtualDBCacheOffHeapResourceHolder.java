@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Holds the Resource as its deflated JSON encoding within a block of off-heap memory (the OFF_HEAP storage
+ * mode). A new Resource instance is decoded on every call to getResource(). Once the holder has been released
+ * its block may be re-used by another Resource, so getResource() returns null from that point on. As with the
+ * COMPRESSED mode, the meta element is held (on the heap) apart from the encoding and re-attached on decode.
+ */
+public class VirtualDBCacheOffHeapResourceHolder implements VirtualDBCacheResourceHolder {
+    private VirtualDBCacheOffHeapBlock offHeapBlock;
+    private int encodedLength;
+    private Meta meta;
+    private VirtualDBCacheOffHeapStore offHeapStore;
+    private VirtualDBCacheResourceCodec resourceCodec;
+    private boolean released;
+
+    public VirtualDBCacheOffHeapResourceHolder(VirtualDBCacheOffHeapBlock offHeapBlock, int encodedLength, Meta meta, VirtualDBCacheOffHeapStore offHeapStore, VirtualDBCacheResourceCodec resourceCodec){
+        this.offHeapBlock = offHeapBlock;
+        this.encodedLength = encodedLength;
+        this.meta = meta;
+        this.offHeapStore = offHeapStore;
+        this.resourceCodec = resourceCodec;
+        this.released = false;
+    }
+
+    @Override
+    public Resource getResource() {
+        byte[] compressedResource;
+        synchronized (this) {
+            if (released) {
+                return (null);
+            }
+            compressedResource = offHeapStore.read(offHeapBlock);
+        }
+        Resource resource = resourceCodec.decompress(compressedResource, encodedLength);
+        if(resource != null && meta != null){
+            resource.setMeta(meta.copy());
+        }
+        return (resource);
+    }
+
+    @Override
+    public int getStoredSize() {
+        return offHeapBlock.getLength();
+    }
+
+    @Override
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            offHeapStore.free(offHeapBlock);
+        }
+    }
+}
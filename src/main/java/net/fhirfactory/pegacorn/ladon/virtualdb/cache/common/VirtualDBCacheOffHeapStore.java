@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap storage for the (serialised) content of the VirtualDB Resource Caches. Memory is allocated as direct
+ * ByteBuffer slabs, each carved into equal sized slots for one size class (powers of two from MINIMUM_BLOCK_SIZE
+ * to MAXIMUM_SLOTTED_BLOCK_SIZE). Freed slots are re-used for the same size class; slabs are not returned to the
+ * operating system. Content larger than the biggest size class is given a direct buffer of its own.
+ *
+ * Only the content lives off-heap - the caches' maps and indexes remain on the heap.
+ *
+ * The store's capacity defaults to half of the JVM's direct memory limit - that is, -XX:MaxDirectMemorySize if it
+ * is set, else the maximum heap size (the JVM's default limit) - leaving the rest for NIO and the other users of
+ * direct memory in the process. It can be set at deployment via the LADON_VIRTUALDB_CACHE_OFF_HEAP_CAPACITY_IN_BYTES
+ * setting (see VirtualDBCacheSettings).
+ */
+@ApplicationScoped
+public class VirtualDBCacheOffHeapStore {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheOffHeapStore.class);
+
+    private static final int MINIMUM_BLOCK_SIZE = 128;
+    private static final int MAXIMUM_SLOTTED_BLOCK_SIZE = 1024 * 1024;
+    private static final int SLAB_SIZE = 4 * 1024 * 1024;
+    // The default capacity as a fraction of the JVM's direct memory limit (see resolveDirectMemoryLimit())
+    private static final long DEFAULT_CAPACITY_DIRECT_MEMORY_DIVISOR = 2;
+    private static final String MAX_DIRECT_MEMORY_SIZE_ARGUMENT = "-XX:MaxDirectMemorySize=";
+    // Overrides the default capacity (in bytes) at deployment, see VirtualDBCacheSettings
+    public static final String CAPACITY_SETTING = VirtualDBCacheSettings.SETTING_PREFIX + "CACHE_OFF_HEAP_CAPACITY_IN_BYTES";
+
+    private SizeClass[] sizeClasses;
+    private AtomicLong reservedBytes;
+    private LongAdder usedBytes;
+    private LongAdder blockCount;
+    private LongAdder allocationFailureCount;
+    private long capacityInBytes;
+
+    public VirtualDBCacheOffHeapStore(){
+        List<SizeClass> sizeClassList = new ArrayList<>();
+        for(int blockSize = MINIMUM_BLOCK_SIZE; blockSize <= MAXIMUM_SLOTTED_BLOCK_SIZE; blockSize = blockSize * 2){
+            sizeClassList.add(new SizeClass(blockSize));
+        }
+        this.sizeClasses = sizeClassList.toArray(new SizeClass[0]);
+        this.reservedBytes = new AtomicLong(0);
+        this.usedBytes = new LongAdder();
+        this.blockCount = new LongAdder();
+        this.allocationFailureCount = new LongAdder();
+        this.capacityInBytes = VirtualDBCacheSettings.resolveLongSetting(CAPACITY_SETTING, resolveDirectMemoryLimit() / DEFAULT_CAPACITY_DIRECT_MEMORY_DIVISOR);
+    }
+
+    /**
+     * Works out the JVM's direct memory limit: the value of -XX:MaxDirectMemorySize if it was given (with an optional
+     * k/m/g suffix), otherwise the maximum heap size, which is what the JVM defaults the limit to.
+     *
+     * @return The direct memory limit in bytes
+     */
+    static long resolveDirectMemoryLimit(){
+        long directMemoryLimit = Runtime.getRuntime().maxMemory();
+        for(String inputArgument: ManagementFactory.getRuntimeMXBean().getInputArguments()){
+            if(inputArgument.startsWith(MAX_DIRECT_MEMORY_SIZE_ARGUMENT)){
+                long configuredLimit = parseMemorySize(inputArgument.substring(MAX_DIRECT_MEMORY_SIZE_ARGUMENT.length()));
+                if(configuredLimit > 0){
+                    directMemoryLimit = configuredLimit;
+                }
+            }
+        }
+        return(directMemoryLimit);
+    }
+
+    /**
+     * @param memorySize A JVM memory size option value, e.g. "512m"
+     * @return The size in bytes, or -1 if it can't be parsed
+     */
+    static long parseMemorySize(String memorySize){
+        if(memorySize == null || memorySize.isEmpty()){
+            return(-1);
+        }
+        long multiplier = 1;
+        char unit = Character.toLowerCase(memorySize.charAt(memorySize.length() - 1));
+        switch(unit){
+            case 'k': multiplier = 1024L; break;
+            case 'm': multiplier = 1024L * 1024; break;
+            case 'g': multiplier = 1024L * 1024 * 1024; break;
+            case 't': multiplier = 1024L * 1024 * 1024 * 1024; break;
+            default: break;
+        }
+        String digits = (multiplier == 1) ? memorySize : memorySize.substring(0, memorySize.length() - 1);
+        try {
+            return(Long.parseLong(digits) * multiplier);
+        } catch (NumberFormatException ex) {
+            LOG.warn(".parseMemorySize(): Unable to parse memory size --> {}", memorySize);
+            return(-1);
+        }
+    }
+
+    /**
+     * Copies the content into a newly allocated off-heap block.
+     *
+     * @param content The bytes to be stored
+     * @return The block holding the content, or null if the store is at capacity
+     */
+    public VirtualDBCacheOffHeapBlock allocate(byte[] content){
+        if(content == null){
+            return(null);
+        }
+        VirtualDBCacheOffHeapBlock newBlock;
+        int sizeClassIndex = resolveSizeClassIndex(content.length);
+        if(sizeClassIndex < 0){
+            newBlock = allocateDedicatedBlock(content.length);
+        } else {
+            newBlock = sizeClasses[sizeClassIndex].allocate(content.length, sizeClassIndex);
+        }
+        if(newBlock == null){
+            allocationFailureCount.increment();
+            LOG.trace(".allocate(): Off-heap store is at capacity, could not allocate --> {} bytes", content.length);
+            return(null);
+        }
+        ByteBuffer writeBuffer = newBlock.getSlab().duplicate();
+        writeBuffer.position(newBlock.getOffset());
+        writeBuffer.put(content);
+        usedBytes.add(content.length);
+        blockCount.increment();
+        return(newBlock);
+    }
+
+    /**
+     * Copies the content of an off-heap block back onto the heap.
+     *
+     * @param block The block to be read
+     * @return The block's content
+     */
+    public byte[] read(VirtualDBCacheOffHeapBlock block){
+        byte[] content = new byte[block.getLength()];
+        ByteBuffer readBuffer = block.getSlab().duplicate();
+        readBuffer.position(block.getOffset());
+        readBuffer.get(content);
+        return(content);
+    }
+
+    /**
+     * Returns a block to the store. The block must not be read after it has been freed.
+     *
+     * @param block The block to be freed
+     */
+    public void free(VirtualDBCacheOffHeapBlock block){
+        if(block == null){
+            return;
+        }
+        usedBytes.add(-block.getLength());
+        blockCount.decrement();
+        if(block.getSizeClassIndex() < 0){
+            reservedBytes.addAndGet(-block.getCapacity());
+        } else {
+            sizeClasses[block.getSizeClassIndex()].free(block.getSlotNumber());
+        }
+    }
+
+    private int resolveSizeClassIndex(int length){
+        for(int index = 0; index < sizeClasses.length; index++){
+            if(length <= sizeClasses[index].blockSize){
+                return(index);
+            }
+        }
+        return(-1);
+    }
+
+    private VirtualDBCacheOffHeapBlock allocateDedicatedBlock(int length){
+        ByteBuffer dedicatedBuffer = reserveDirectBuffer(length);
+        if(dedicatedBuffer == null){
+            return(null);
+        }
+        return(new VirtualDBCacheOffHeapBlock(dedicatedBuffer, 0, length, length, -1, -1));
+    }
+
+    private ByteBuffer reserveDirectBuffer(int size){
+        long reserved = reservedBytes.addAndGet(size);
+        if(reserved > capacityInBytes){
+            reservedBytes.addAndGet(-size);
+            return(null);
+        }
+        try {
+            return(ByteBuffer.allocateDirect(size));
+        } catch (OutOfMemoryError ex){
+            LOG.warn(".reserveDirectBuffer(): Unable to allocate direct memory, error --> {}", ex.getMessage());
+            reservedBytes.addAndGet(-size);
+            return(null);
+        }
+    }
+
+    //
+    // Metrics
+    //
+
+    /**
+     * @return The number of off-heap bytes allocated (as slabs or dedicated buffers) by the store
+     */
+    public long getReservedBytes(){
+        return(reservedBytes.get());
+    }
+
+    /**
+     * @return The number of off-heap bytes holding content
+     */
+    public long getUsedBytes(){
+        return(usedBytes.sum());
+    }
+
+    /**
+     * @return The number of blocks currently allocated
+     */
+    public long getBlockCount(){
+        return(blockCount.sum());
+    }
+
+    /**
+     * @return The number of allocations refused because the store was at capacity
+     */
+    public long getAllocationFailureCount(){
+        return(allocationFailureCount.sum());
+    }
+
+    public long getCapacityInBytes() {
+        return capacityInBytes;
+    }
+
+    public void setCapacityInBytes(long capacityInBytes) {
+        this.capacityInBytes = capacityInBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBCacheOffHeapStore{" +
+                "reservedBytes=" + getReservedBytes() +
+                ", usedBytes=" + getUsedBytes() +
+                ", blockCount=" + getBlockCount() +
+                ", allocationFailureCount=" + getAllocationFailureCount() +
+                ", capacityInBytes=" + capacityInBytes +
+                '}';
+    }
+
+    /**
+     * The slabs (and free slots) for a single block size.
+     */
+    private class SizeClass {
+        private int blockSize;
+        private int slotsPerSlab;
+        private List<ByteBuffer> slabs;
+        private int[] freeSlots;
+        private int freeSlotCount;
+
+        SizeClass(int blockSize){
+            this.blockSize = blockSize;
+            this.slotsPerSlab = Math.max(1, SLAB_SIZE / blockSize);
+            this.slabs = new ArrayList<>();
+            this.freeSlots = new int[slotsPerSlab];
+            this.freeSlotCount = 0;
+        }
+
+        synchronized VirtualDBCacheOffHeapBlock allocate(int length, int sizeClassIndex){
+            if(freeSlotCount == 0){
+                ByteBuffer newSlab = reserveDirectBuffer(slotsPerSlab * blockSize);
+                if(newSlab == null){
+                    return(null);
+                }
+                int firstSlotNumber = slabs.size() * slotsPerSlab;
+                slabs.add(newSlab);
+                if(freeSlots.length < freeSlotCount + slotsPerSlab){
+                    freeSlots = Arrays.copyOf(freeSlots, Math.max(freeSlots.length * 2, freeSlotCount + slotsPerSlab));
+                }
+                for(int slot = slotsPerSlab - 1; slot >= 0; slot--){
+                    freeSlots[freeSlotCount] = firstSlotNumber + slot;
+                    freeSlotCount += 1;
+                }
+            }
+            freeSlotCount -= 1;
+            int slotNumber = freeSlots[freeSlotCount];
+            ByteBuffer slab = slabs.get(slotNumber / slotsPerSlab);
+            int offset = (slotNumber % slotsPerSlab) * blockSize;
+            return(new VirtualDBCacheOffHeapBlock(slab, offset, blockSize, length, sizeClassIndex, slotNumber));
+        }
+
+        synchronized void free(int slotNumber){
+            if(freeSlots.length == freeSlotCount){
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeSlotCount] = slotNumber;
+            freeSlotCount += 1;
+        }
+    }
+}
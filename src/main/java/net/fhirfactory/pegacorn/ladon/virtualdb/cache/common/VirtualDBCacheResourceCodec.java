@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import ca.uhn.fhir.parser.IParser;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.hl7.fhir.r4.model.Meta;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoding services for the VirtualDB Resource Caches. HAPI parsers (and the zip Deflater/Inflater) are not
+ * thread-safe, so each thread is given its own instances.
+ */
+@ApplicationScoped
+public class VirtualDBCacheResourceCodec {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheResourceCodec.class);
+
+    private static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    private Supplier<IParser> jsonParserFactory;
+    private ThreadLocal<IParser> jsonParser;
+    private ThreadLocal<IParser> digestParser;
+    private ThreadLocal<MessageDigest> contentDigest;
+    private ThreadLocal<Deflater> deflater;
+    private ThreadLocal<Inflater> inflater;
+
+    public VirtualDBCacheResourceCodec(){
+    }
+
+    /**
+     * Creates a (ready to use) codec that takes its JSON parsers from the given factory, rather than from the
+     * injected FHIRContextUtility - for use outside of the container.
+     *
+     * @param jsonParserFactory Supplies a new JSON parser on each call
+     */
+    VirtualDBCacheResourceCodec(Supplier<IParser> jsonParserFactory){
+        this.jsonParserFactory = jsonParserFactory;
+        initialise();
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        LOG.debug(".initialise(): Entry");
+        if(jsonParserFactory == null){
+            this.jsonParserFactory = () -> fhirContextUtility.getJsonParser();
+        }
+        this.jsonParser = ThreadLocal.withInitial(() -> jsonParserFactory.get());
+        this.digestParser = ThreadLocal.withInitial(() -> {
+            IParser parser = jsonParserFactory.get();
+            parser.setPrettyPrint(false);
+            return(parser);
+        });
+        this.contentDigest = ThreadLocal.withInitial(() -> {
+            try {
+                return(MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("Content digest algorithm is not available --> " + CONTENT_DIGEST_ALGORITHM, ex);
+            }
+        });
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+        this.inflater = ThreadLocal.withInitial(Inflater::new);
+        LOG.debug(".initialise(): Exit");
+    }
+
+    /**
+     * @param resource The Resource to be encoded
+     * @return The Resource encoded as a (JSON) String
+     */
+    public String encodeToString(Resource resource){
+        if(resource == null){
+            return(null);
+        }
+        String encodedResource = jsonParser.get().encodeResourceToString(resource);
+        return(encodedResource);
+    }
+
+    /**
+     * Encodes the content of the Resource - that is, its (compact JSON) encoding with its own meta element excluded
+     * (as the versionId, lastUpdated etc. change on every write, even when the content doesn't). Only the root
+     * Resource's meta is left out: contained Resources are encoded in full. The caches encode each Resource they
+     * add just once, in this form, and derive its content digest, its weight and (for the COMPRESSED and OFF_HEAP
+     * storage modes) its stored form from the one encoding; the root meta element is held alongside.
+     *
+     * @param resource The Resource to be encoded
+     * @return The encoded content, or null if there is no Resource
+     */
+    public String encodeContent(Resource resource){
+        if(resource == null){
+            return(null);
+        }
+        IParser parser = digestParser.get();
+        // A "*.meta" path would also leave out the meta of contained Resources, which aren't held alongside
+        parser.setDontEncodeElements(Collections.singleton(resource.fhirType() + ".meta"));
+        String encodedContent = parser.encodeResourceToString(resource);
+        return(encodedContent);
+    }
+
+    /**
+     * Computes a digest of the Resource's content (see encodeContent()). Two Resources with the same digest can be
+     * treated as unchanged with respect to each other, other than (possibly) their meta elements.
+     *
+     * @param resource The Resource to be digested
+     * @return The content digest, or null if there is no Resource
+     */
+    public byte[] computeContentDigest(Resource resource){
+        return(computeContentDigest(encodeContent(resource)));
+    }
+
+    /**
+     * @param encodedContent A Resource's content, as encoded by encodeContent()
+     * @return The content digest, or null if there is no content
+     */
+    public byte[] computeContentDigest(String encodedContent){
+        if(encodedContent == null){
+            return(null);
+        }
+        MessageDigest currentDigest = contentDigest.get();
+        currentDigest.reset();
+        byte[] digest = currentDigest.digest(encodedContent.getBytes(StandardCharsets.UTF_8));
+        return(digest);
+    }
+
+    /**
+     * @param digestA A content digest (from computeContentDigest())
+     * @param digestB Another content digest
+     * @return True if both digests are present and equal
+     */
+    public static boolean isSameContent(byte[] digestA, byte[] digestB){
+        if(digestA == null || digestB == null){
+            return(false);
+        }
+        return(MessageDigest.isEqual(digestA, digestB));
+    }
+
+    /**
+     * Compares two meta elements, which the content digest leaves out. An absent meta element and an empty one are
+     * treated as the same.
+     *
+     * @param metaA A meta element (may be null)
+     * @param metaB Another meta element (may be null)
+     * @return True if both are absent/empty, or they are deeply equal
+     */
+    public static boolean isSameMeta(Meta metaA, Meta metaB){
+        boolean metaAIsEmpty = (metaA == null || metaA.isEmpty());
+        boolean metaBIsEmpty = (metaB == null || metaB.isEmpty());
+        if(metaAIsEmpty || metaBIsEmpty){
+            return(metaAIsEmpty && metaBIsEmpty);
+        }
+        return(metaA.equalsDeep(metaB));
+    }
+
+    /**
+     * @param encodedResource A (JSON) encoded Resource
+     * @return The decoded Resource
+     */
+    public Resource decodeFromString(String encodedResource){
+        if(encodedResource == null){
+            return(null);
+        }
+        Resource resource = (Resource)jsonParser.get().parseResource(encodedResource);
+        return(resource);
+    }
+
+    /**
+     * Deflates the (UTF-8) bytes of an encoded Resource.
+     *
+     * @param encodedResource The (JSON) encoded Resource
+     * @return The compressed bytes
+     */
+    public byte[] compress(String encodedResource){
+        byte[] encodedBytes = encodedResource.getBytes(StandardCharsets.UTF_8);
+        Deflater currentDeflater = deflater.get();
+        currentDeflater.reset();
+        currentDeflater.setInput(encodedBytes);
+        currentDeflater.finish();
+        ByteArrayOutputStream compressedStream = new ByteArrayOutputStream(Math.max(64, encodedBytes.length / 4));
+        byte[] buffer = new byte[4096];
+        while(!currentDeflater.finished()){
+            int compressedCount = currentDeflater.deflate(buffer);
+            compressedStream.write(buffer, 0, compressedCount);
+        }
+        return(compressedStream.toByteArray());
+    }
+
+    /**
+     * Inflates and decodes a Resource previously compressed via compress().
+     *
+     * @param compressedResource The compressed bytes
+     * @param encodedLength The length (in bytes) of the UTF-8 encoded Resource before it was compressed
+     * @return The decoded Resource, or null if the content could not be inflated
+     */
+    public Resource decompress(byte[] compressedResource, int encodedLength){
+        Inflater currentInflater = inflater.get();
+        currentInflater.reset();
+        currentInflater.setInput(compressedResource);
+        byte[] encodedBytes = new byte[encodedLength];
+        try {
+            int inflatedCount = 0;
+            while(inflatedCount < encodedLength && !currentInflater.finished()){
+                int currentCount = currentInflater.inflate(encodedBytes, inflatedCount, encodedLength - inflatedCount);
+                if(currentCount == 0 && (currentInflater.needsInput() || currentInflater.needsDictionary())){
+                    LOG.error(".decompress(): Cached Resource content is truncated");
+                    return(null);
+                }
+                inflatedCount += currentCount;
+            }
+        } catch (DataFormatException ex){
+            LOG.error(".decompress(): Unable to inflate cached Resource, error --> {}", ex.getMessage());
+            return(null);
+        }
+        return(decodeFromString(new String(encodedBytes, StandardCharsets.UTF_8)));
+    }
+}
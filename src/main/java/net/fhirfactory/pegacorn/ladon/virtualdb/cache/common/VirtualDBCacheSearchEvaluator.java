@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates search criteria (as passed to ResourceDBEngine.getResourcesViaSearchCriteria()) against Resources held
+ * within a cache. Each criterion names an element of the Resource (via the Property) and a value; a Resource
+ * matches if, for every criterion, at least one of the element's values matches the criterion's value.
+ *
+ * Only token and reference style matching is implemented, following the FHIR search semantics for those types:
+ * Identifiers, Codings and CodeableConcepts match on "code", "system|code", "|code" (no system) or "system|" (any
+ * code in the system); References match on their literal reference, "ResourceType/id" or just the id; and
+ * code/id/uri/boolean primitives match exactly. Elements whose FHIR search semantics differ from an exact match -
+ * strings (prefix, accent-insensitive), dates and numbers (ranges and prefixes), quantities and so on - are not
+ * evaluated, and neither is an element the Resource type doesn't have: in each case null is returned, so that the
+ * caller can fall back to the Sources-of-Truth.
+ *
+ * The search criteria don't carry their modifiers or search parameter types, so the evaluator is only used for the
+ * searches (SearchNameEnum values) that it has been explicitly allowed to answer - those known to be made up only of
+ * plain token and reference parameters. All other searches return null.
+ */
+public class VirtualDBCacheSearchEvaluator {
+    private Set<SearchNameEnum> evaluableSearches;
+
+    /**
+     * Creates an evaluator that answers no searches (every search is left to the Sources-of-Truth).
+     */
+    public VirtualDBCacheSearchEvaluator(){
+        this(Collections.emptySet());
+    }
+
+    /**
+     * @param evaluableSearches The searches the evaluator may answer
+     */
+    public VirtualDBCacheSearchEvaluator(Set<SearchNameEnum> evaluableSearches){
+        this.evaluableSearches = Collections.unmodifiableSet(new HashSet<>(evaluableSearches));
+    }
+
+    /**
+     * @param searchName The search being performed
+     * @return True if the search is one the evaluator may answer
+     */
+    public boolean isEvaluableSearch(SearchNameEnum searchName){
+        return(searchName != null && evaluableSearches.contains(searchName));
+    }
+
+    public Set<SearchNameEnum> getEvaluableSearches(){
+        return(evaluableSearches);
+    }
+
+    /**
+     * @param searchName The search being performed
+     * @param candidates The Resources to be searched
+     * @param parameterSet The search criteria
+     * @return The matching Resources, or null if the search can't be evaluated within the cache
+     */
+    public List<Resource> evaluate(SearchNameEnum searchName, Collection<Resource> candidates, Map<Property, Serializable> parameterSet){
+        if(!isEvaluableSearch(searchName) || parameterSet == null){
+            return(null);
+        }
+        for(Map.Entry<Property, Serializable> criterion: parameterSet.entrySet()){
+            if(criterion.getKey() == null || criterion.getKey().getName() == null || criterion.getValue() == null){
+                return(null);
+            }
+        }
+        List<Resource> matchingResources = new ArrayList<>();
+        for(Resource candidate: candidates){
+            Boolean isMatch = matchesAll(candidate, parameterSet);
+            if(isMatch == null){
+                return(null);
+            }
+            if(isMatch){
+                matchingResources.add(candidate);
+            }
+        }
+        return(matchingResources);
+    }
+
+    private Boolean matchesAll(Resource candidate, Map<Property, Serializable> parameterSet){
+        for(Map.Entry<Property, Serializable> criterion: parameterSet.entrySet()){
+            Property candidateProperty;
+            try {
+                candidateProperty = candidate.getNamedProperty(criterion.getKey().getName());
+            } catch (FHIRException fhirException) {
+                return(null);
+            }
+            if(candidateProperty == null){
+                return(null);
+            }
+            boolean criterionMatched = false;
+            for(Base candidateValue: candidateProperty.getValues()){
+                Boolean valueMatches = matchesValue(candidateValue, criterion.getValue());
+                if(valueMatches == null){
+                    return(null);
+                }
+                if(valueMatches){
+                    criterionMatched = true;
+                    break;
+                }
+            }
+            if(!criterionMatched){
+                return(false);
+            }
+        }
+        return(true);
+    }
+
+    /**
+     * @param element A value of the Resource's element
+     * @param criterion The value being searched for
+     * @return Whether the element matches, or null if the element is of a type that can't be matched
+     */
+    private Boolean matchesValue(Base element, Serializable criterion){
+        if(criterion instanceof Base){
+            return(element.equalsDeep((Base)criterion));
+        }
+        String criterionText = criterion.toString().trim();
+        if(element instanceof CodeType || element instanceof IdType || element instanceof UriType || element instanceof BooleanType || element instanceof Enumeration){
+            return(criterionText.equals(element.primitiveValue()));
+        }
+        if(element instanceof Identifier){
+            Identifier identifier = (Identifier)element;
+            return(matchesToken(identifier.getSystem(), identifier.getValue(), criterionText));
+        }
+        if(element instanceof Reference){
+            return(matchesReference((Reference)element, criterionText));
+        }
+        if(element instanceof Coding){
+            Coding coding = (Coding)element;
+            return(matchesToken(coding.getSystem(), coding.getCode(), criterionText));
+        }
+        if(element instanceof CodeableConcept){
+            for(Coding coding: ((CodeableConcept)element).getCoding()){
+                if(matchesToken(coding.getSystem(), coding.getCode(), criterionText)){
+                    return(true);
+                }
+            }
+            return(false);
+        }
+        return(null);
+    }
+
+    /**
+     * Matches a token ("code", "system|code", "|code" or "system|") as per the FHIR token search parameter type.
+     */
+    private boolean matchesToken(String system, String code, String criterionText){
+        int separator = criterionText.indexOf('|');
+        if(separator < 0){
+            return(criterionText.equals(code));
+        }
+        String criterionSystem = criterionText.substring(0, separator);
+        String criterionCode = criterionText.substring(separator + 1);
+        if(criterionSystem.isEmpty()){
+            return((system == null || system.isEmpty()) && criterionCode.equals(code));
+        }
+        if(!criterionSystem.equals(system)){
+            return(false);
+        }
+        return(criterionCode.isEmpty() || criterionCode.equals(code));
+    }
+
+    /**
+     * Matches a reference (the literal reference, "ResourceType/id" or just "id") as per the FHIR reference search
+     * parameter type.
+     */
+    private boolean matchesReference(Reference reference, String criterionText){
+        if(!reference.hasReference()){
+            return(false);
+        }
+        if(criterionText.equals(reference.getReference())){
+            return(true);
+        }
+        IdType referencedId = new IdType(reference.getReference());
+        if(criterionText.contains("/")){
+            return(criterionText.equals(referencedId.toUnqualifiedVersionless().getValue()));
+        }
+        return(criterionText.equals(referencedId.getIdPart()));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the VirtualDB cache tuning settings that aren't part of the (externally defined) Ladon deployment
+ * properties. Each setting is read from the system property of the given name, else the environment variable of
+ * that name, else the supplied default.
+ */
+public final class VirtualDBCacheSettings {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheSettings.class);
+
+    public static final String SETTING_PREFIX = "LADON_VIRTUALDB_";
+
+    private VirtualDBCacheSettings(){
+    }
+
+    public static String resolveSetting(String settingName, String defaultValue){
+        String value = System.getProperty(settingName, System.getenv(settingName));
+        if(value == null || value.trim().isEmpty()){
+            return(defaultValue);
+        }
+        return(value.trim());
+    }
+
+    public static long resolveLongSetting(String settingName, long defaultValue){
+        String value = resolveSetting(settingName, null);
+        if(value == null){
+            return(defaultValue);
+        }
+        try {
+            return(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            LOG.warn(".resolveLongSetting(): Ignoring invalid value for setting --> {}, value --> {}", settingName, value);
+            return(defaultValue);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple (lock-free) usage counters for a single VirtualDB Resource Cache: hits and misses, loads (of missing
+ * Resources, from the Persistence Service and/or Sources-of-Truth) and their latency, evictions by cause, and
+ * which path (the cache or the Sources-of-Truth) served each search.
+ */
+public class VirtualDBCacheStatistics {
+    private LongAdder hitCount;
+    private LongAdder missCount;
+    private LongAdder loadSuccessCount;
+    private LongAdder loadFailureCount;
+    private LongAdder totalLoadTime;
+    private EnumMap<VirtualDBCacheEvictionCauseEnum, LongAdder> evictionCounts;
+    private LongAdder cacheSearchCount;
+    private LongAdder sourceOfTruthSearchCount;
+    private LongAdder offHeapAllocationCount;
+    private LongAdder offHeapAllocationFailureCount;
+
+    public VirtualDBCacheStatistics(){
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.loadSuccessCount = new LongAdder();
+        this.loadFailureCount = new LongAdder();
+        this.totalLoadTime = new LongAdder();
+        this.cacheSearchCount = new LongAdder();
+        this.sourceOfTruthSearchCount = new LongAdder();
+        this.offHeapAllocationCount = new LongAdder();
+        this.offHeapAllocationFailureCount = new LongAdder();
+        // Fully populated here and never modified afterwards, so safe to read concurrently
+        this.evictionCounts = new EnumMap<>(VirtualDBCacheEvictionCauseEnum.class);
+        for(VirtualDBCacheEvictionCauseEnum cause: VirtualDBCacheEvictionCauseEnum.values()){
+            evictionCounts.put(cause, new LongAdder());
+        }
+    }
+
+    public void recordHit(){
+        hitCount.increment();
+    }
+
+    public void recordMiss(){
+        missCount.increment();
+    }
+
+    /**
+     * @param loadTimeInNanoseconds The time taken to load the Resource
+     * @param loaded True if the Resource was found (and cached), false if the load failed or found nothing
+     */
+    public void recordLoad(long loadTimeInNanoseconds, boolean loaded){
+        if(loaded){
+            loadSuccessCount.increment();
+        } else {
+            loadFailureCount.increment();
+        }
+        totalLoadTime.add(loadTimeInNanoseconds);
+    }
+
+    public void recordEviction(VirtualDBCacheEvictionCauseEnum cause){
+        evictionCounts.get(cause).increment();
+    }
+
+    /**
+     * @param servedFromCache True if the search was answered from the cache, false if it went to the Sources-of-Truth
+     */
+    public void recordSearch(boolean servedFromCache){
+        if(servedFromCache){
+            cacheSearchCount.increment();
+        } else {
+            sourceOfTruthSearchCount.increment();
+        }
+    }
+
+    /**
+     * @param allocated True if the entry's content was stored off-heap, false if the off-heap store was full (and the
+     *                  content was held on the heap instead)
+     */
+    public void recordOffHeapAllocation(boolean allocated){
+        if(allocated){
+            offHeapAllocationCount.increment();
+        } else {
+            offHeapAllocationFailureCount.increment();
+        }
+    }
+
+    public long getHitCount(){
+        return(hitCount.sum());
+    }
+
+    public long getMissCount(){
+        return(missCount.sum());
+    }
+
+    public long getRequestCount(){
+        return(getHitCount() + getMissCount());
+    }
+
+    public double getHitRate(){
+        long requestCount = getRequestCount();
+        if(requestCount == 0){
+            return(1.0);
+        }
+        return((double)getHitCount() / requestCount);
+    }
+
+    public long getLoadSuccessCount(){
+        return(loadSuccessCount.sum());
+    }
+
+    public long getLoadFailureCount(){
+        return(loadFailureCount.sum());
+    }
+
+    public long getLoadCount(){
+        return(getLoadSuccessCount() + getLoadFailureCount());
+    }
+
+    public long getTotalLoadTimeInMilliseconds(){
+        return(TimeUnit.NANOSECONDS.toMillis(totalLoadTime.sum()));
+    }
+
+    public double getAverageLoadTimeInMilliseconds(){
+        long loadCount = getLoadCount();
+        if(loadCount == 0){
+            return(0.0);
+        }
+        return((double)totalLoadTime.sum() / loadCount / 1000000.0);
+    }
+
+    public long getEvictionCount(VirtualDBCacheEvictionCauseEnum cause){
+        return(evictionCounts.get(cause).sum());
+    }
+
+    public long getEvictionCount(){
+        long evictionCount = 0;
+        for(LongAdder causeCount: evictionCounts.values()){
+            evictionCount += causeCount.sum();
+        }
+        return(evictionCount);
+    }
+
+    public long getCacheSearchCount(){
+        return(cacheSearchCount.sum());
+    }
+
+    public long getSourceOfTruthSearchCount(){
+        return(sourceOfTruthSearchCount.sum());
+    }
+
+    public long getOffHeapAllocationCount(){
+        return(offHeapAllocationCount.sum());
+    }
+
+    public long getOffHeapAllocationFailureCount(){
+        return(offHeapAllocationFailureCount.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBCacheStatistics{" +
+                "hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", hitRate=" + getHitRate() +
+                ", loadSuccessCount=" + getLoadSuccessCount() +
+                ", loadFailureCount=" + getLoadFailureCount() +
+                ", averageLoadTimeInMilliseconds=" + getAverageLoadTimeInMilliseconds() +
+                ", evictionCounts=" + evictionCounts +
+                ", cacheSearchCount=" + getCacheSearchCount() +
+                ", sourceOfTruthSearchCount=" + getSourceOfTruthSearchCount() +
+                ", offHeapAllocationCount=" + getOffHeapAllocationCount() +
+                ", offHeapAllocationFailureCount=" + getOffHeapAllocationFailureCount() +
+                '}';
+    }
+}
@@ -21,23 +21,48 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
 
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import java.time.Instant;
-import java.util.Enumeration;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public abstract class VirtualDBIdTypeBasedCacheBase {
+public abstract class VirtualDBIdTypeBasedCacheBase implements VirtualDBCacheExpiryTarget<IdType> {
+
+    private static final long DEFAULT_CACHE_MAXIMUM_SIZE = 100000;
+    private static final long DEFAULT_CACHE_MEMORY_BUDGET_IN_BYTES = 64L * 1024L * 1024L;
+    private static final double CACHE_RECLAIM_TARGET_FRACTION = 0.95;
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+    // The weight of an OFF_HEAP entry only reflects its (on-heap) handle and index keys, not its content.
+    private static final int OFF_HEAP_ENTRY_WEIGHT = 64;
+    private static final int DEFAULT_UNKNOWN_IDENTIFIER_RETIREMENT_IN_SECONDS = 30;
+    private static final long UNKNOWN_IDENTIFIER_MAXIMUM_SIZE = 50000;
+    private static final long DEFAULT_SEARCH_RESULT_CACHE_MAXIMUM_SIZE = 1000;
 
     @Inject
     private VirtualDBKeyManagement virtualDBKeyManagement;
@@ -45,13 +70,42 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     @Inject
     private VirtualDBMethodOutcomeFactory outcomeFactory;
 
-    private ConcurrentHashMap<IdType, CacheResourceEntry> resourceCacheById;
-    private ConcurrentHashMap<IdType, Object> resourceCacheLockSet;
+    @Inject
+    private VirtualDBCacheExpiryService expiryService;
+
+    @Inject
+    private VirtualDBCacheMemoryManager memoryManager;
+
+    @Inject
+    private VirtualDBCacheInvalidationService invalidationService;
+
+    @Inject
+    private VirtualDBCacheResourceCodec resourceCodec;
+
+    @Inject
+    private VirtualDBCacheOffHeapStore offHeapStore;
+
+    private VirtualDBMultiKeyCache resourceCache;
+    private VirtualDBCacheLockTable resourceLockTable;
+    private VirtualDBCacheStatistics cacheStatistics;
+    private AtomicLong cacheWeight;
+    private long cacheMemoryBudgetInBytes;
+    private VirtualDBCacheSearchEvaluator searchEvaluator;
+    // The completeness generation (bumped by every eviction) shifted left by one, with the "complete" flag in the
+    // lowest bit, so that the flag can only be set (by a CAS) against the generation a complete load began in
+    private AtomicLong completenessState;
+    private Cache<VirtualDBIdentifierKey, Boolean> unknownIdentifierCache;
+    private VirtualDBSearchResultCache searchResultCache;
+    private ObjectName monitorName;
     boolean isInitialised;
 
     protected VirtualDBIdTypeBasedCacheBase() {
-        resourceCacheById = new ConcurrentHashMap<>();
-        resourceCacheLockSet = new ConcurrentHashMap<>();
+        resourceCache = new VirtualDBMultiKeyCache();
+        resourceLockTable = new VirtualDBCacheLockTable();
+        cacheStatistics = new VirtualDBCacheStatistics();
+        cacheWeight = new AtomicLong(0);
+        searchEvaluator = new VirtualDBCacheSearchEvaluator();
+        completenessState = new AtomicLong(0);
         this.isInitialised = false;
     }
 
@@ -63,54 +117,356 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     protected abstract String getCacheClassName();
     protected abstract Resource createClonedResource(Resource resource);
 
+    /**
+     * Selects the storage implementation used for this cache. Caches default to an (unbounded) ConcurrentHashMap
+     * whose entries are retired by the VirtualDBCacheExpiryService; override to return CAFFEINE for a bounded,
+     * W-TinyLFU managed cache.
+     *
+     * @return The backend to be used for this cache
+     */
+    protected VirtualDBCacheBackendEnum specifyCacheBackend(){
+        return(VirtualDBCacheBackendEnum.CONCURRENT_MAP);
+    }
+
+    /**
+     * The maximum number of Resources held by this cache, only enforced by the CAFFEINE backend (and only when
+     * no memory budget is specified).
+     *
+     * @return The maximum number of entries in the cache
+     */
+    protected long specifyCacheMaximumSize(){
+        return(DEFAULT_CACHE_MAXIMUM_SIZE);
+    }
+
+    /**
+     * The default memory budget for this cache, expressed as the total (estimated) encoded size of the Resources it
+     * holds. Once the budget is exceeded, entries are evicted. A value of zero (or less) disables the per-cache
+     * budget, although the cache is still subject to the global budget managed by the VirtualDBCacheMemoryManager.
+     *
+     * The default can be overridden at deployment via the LADON_VIRTUALDB_[CACHE CLASS NAME]_CACHE_MEMORY_BUDGET_IN_BYTES
+     * setting (see VirtualDBCacheSettings), e.g. LADON_VIRTUALDB_PATIENT_CACHE_MEMORY_BUDGET_IN_BYTES.
+     *
+     * @return The cache's default memory budget in bytes
+     */
+    protected long specifyCacheMemoryBudgetInBytes(){
+        return(DEFAULT_CACHE_MEMORY_BUDGET_IN_BYTES);
+    }
+
+    /**
+     * The form in which this cache holds its Resources. By default, the Resource objects are held as-is (RESOURCE);
+     * caches of large, rarely re-read Resources can instead hold them COMPRESSED, at the cost of a decode per read.
+     * OFF_HEAP caches hold the compressed content in the VirtualDBCacheOffHeapStore, keeping only the entries and
+     * indexes on the heap, and fall back to COMPRESSED for any entry the store has no room for.
+     *
+     * @return The storage mode for the cache's Resources
+     */
+    protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode(){
+        return(VirtualDBCacheStorageModeEnum.RESOURCE);
+    }
+
+    /**
+     * The retirement age for a specific Resource. By default every Resource in the cache is given the cache's
+     * retirement age (specifyCacheElementRetirementInSeconds()), but caches of Resources with a lifecycle can
+     * override this to derive it from the content - e.g. keeping finished (and so stable) Resources for longer than
+     * those still in progress.
+     *
+     * @param resource The Resource about to be cached
+     * @return The retirement age, in seconds, for the Resource
+     */
+    protected int specifyResourceRetirementInSeconds(Resource resource){
+        return(specifyCacheElementRetirementInSeconds());
+    }
+
+    /**
+     * The References (from the Resource to others) by which this cache's entries are reverse indexed - see
+     * getResourcesReferencing(). By default no References are indexed; caches whose Resources are commonly looked up
+     * by what they point at (e.g. an Encounter's subject) override this to return those References.
+     *
+     * @param resource The Resource about to be cached
+     * @return The References to be indexed
+     */
+    protected List<Reference> resolveReferenceSet(Resource resource){
+        return(new ArrayList<>());
+    }
+
+    /**
+     * Whether this cache can be marked as holding every Resource of its type (see markCacheComplete()), so that
+     * searches can be answered from the cache alone. Only worth enabling for small, slowly-changing Resource sets
+     * that are fully loaded at warm-up.
+     *
+     * @return True if the cache's completeness is tracked
+     */
+    protected boolean specifyCacheCompletenessTracking(){
+        return(false);
+    }
+
+    /**
+     * The searches that may be answered from a complete cache (see VirtualDBCacheSearchEvaluator) - only those made
+     * up solely of plain token and reference parameters, whose answers are then the same as the Sources-of-Truth
+     * would give. Every other search goes to the Sources-of-Truth. None are allowed by default; deployments can
+     * list them (by SearchNameEnum name, comma separated) in the LADON_VIRTUALDB_[CACHE CLASS NAME]_CACHE_EVALUABLE_SEARCHES
+     * setting (see VirtualDBCacheSettings).
+     *
+     * @return The searches the cache may answer itself
+     */
+    protected Set<SearchNameEnum> specifyCacheEvaluableSearches(){
+        String evaluableSearchesSetting = VirtualDBCacheSettings.SETTING_PREFIX + getCacheClassName().toUpperCase(Locale.ROOT) + "_CACHE_EVALUABLE_SEARCHES";
+        Set<SearchNameEnum> evaluableSearches = new HashSet<>();
+        for(String searchName: VirtualDBCacheSettings.resolveSetting(evaluableSearchesSetting, "").split(",")){
+            if(searchName.trim().isEmpty()){
+                continue;
+            }
+            try {
+                evaluableSearches.add(SearchNameEnum.valueOf(searchName.trim()));
+            } catch (IllegalArgumentException ex) {
+                getLogger().warn(".specifyCacheEvaluableSearches(): Ignoring unknown search name --> {}", searchName);
+            }
+        }
+        return(evaluableSearches);
+    }
+
+    /**
+     * Whether entries are retired a fixed time after they are written (ABSOLUTE) or after they were last read
+     * (SLIDING).
+     *
+     * @return The expiry policy for the cache's entries
+     */
+    protected VirtualDBCacheExpiryPolicyEnum specifyCacheExpiryPolicy(){
+        return(VirtualDBCacheExpiryPolicyEnum.ABSOLUTE);
+    }
+
+    /**
+     * The fraction of the retirement age after which a read of an entry triggers an asynchronous reload from the
+     * Sources of Truth (refresh-ahead), while the cached Resource continues to be served. Zero disables
+     * refresh-ahead, so entries simply expire.
+     *
+     * @return The refresh-ahead fraction (between 0 and 1)
+     */
+    protected double specifyRefreshAheadFraction(){
+        return(0.0);
+    }
+
+    /**
+     * How long an Identifier the Sources of Truth could not resolve is remembered as unknown (so that repeated
+     * lookups of it don't go back to the Sources of Truth). Zero (or less) disables the negative cache.
+     *
+     * @return The retirement age, in seconds, of unknown Identifiers
+     */
+    protected int specifyUnknownIdentifierRetirementInSeconds(){
+        return(DEFAULT_UNKNOWN_IDENTIFIER_RETIREMENT_IN_SECONDS);
+    }
+
+    /**
+     * The maximum number of search results (each a list of Resource ids) held in this type's search-result cache.
+     * Zero disables the search-result cache, so every search that can't be answered from a complete cache goes to
+     * the Sources of Truth.
+     *
+     * @return The maximum number of cached search results
+     */
+    protected long specifySearchResultCacheMaximumSize(){
+        return(DEFAULT_SEARCH_RESULT_CACHE_MAXIMUM_SIZE);
+    }
+
+    /**
+     * How long a search result is held before it is retired (and the search re-sent to the Sources of Truth), as
+     * changes made to the Sources of Truth by other routes don't invalidate it. This is capped at the cache's
+     * retirement age (specifyCacheElementRetirementInSeconds()), which is also the default.
+     *
+     * @return The retirement age, in seconds, of cached search results
+     */
+    protected int specifySearchResultRetirementInSeconds(){
+        return(specifyCacheElementRetirementInSeconds());
+    }
+
     @PostConstruct
     protected void initialise() {
         if (!this.isInitialised) {
             getLogger().debug(".initialise(): Initialising the FHIR Parser framework");
+            String memoryBudgetSetting = VirtualDBCacheSettings.SETTING_PREFIX + getCacheClassName().toUpperCase(Locale.ROOT) + "_CACHE_MEMORY_BUDGET_IN_BYTES";
+            this.cacheMemoryBudgetInBytes = VirtualDBCacheSettings.resolveLongSetting(memoryBudgetSetting, specifyCacheMemoryBudgetInBytes());
+            getLogger().debug(".initialise(): Cache memory budget --> {} bytes", cacheMemoryBudgetInBytes);
+            if(specifyCacheCompletenessTracking()){
+                this.searchEvaluator = new VirtualDBCacheSearchEvaluator(specifyCacheEvaluableSearches());
+                getLogger().debug(".initialise(): Searches answerable from the cache --> {}", searchEvaluator.getEvaluableSearches());
+            }
+            if(specifyCacheBackend() == VirtualDBCacheBackendEnum.CAFFEINE){
+                getLogger().debug(".initialise(): Using a Caffeine backed cache");
+                this.resourceCache = new VirtualDBMultiKeyCache(buildCaffeineCache());
+            }
+            if(specifyUnknownIdentifierRetirementInSeconds() > 0){
+                this.unknownIdentifierCache = Caffeine.newBuilder()
+                        .maximumSize(UNKNOWN_IDENTIFIER_MAXIMUM_SIZE)
+                        .expireAfterWrite(specifyUnknownIdentifierRetirementInSeconds(), TimeUnit.SECONDS)
+                        .build();
+            }
+            long searchResultRetirementInSeconds = Math.min(specifySearchResultRetirementInSeconds(), specifyCacheElementRetirementInSeconds());
+            if(specifySearchResultCacheMaximumSize() > 0 && searchResultRetirementInSeconds > 0){
+                this.searchResultCache = new VirtualDBSearchResultCache(specifySearchResultCacheMaximumSize(), searchResultRetirementInSeconds);
+            }
+            memoryManager.registerCache(this);
+            invalidationService.registerCache(this);
+            registerMonitor();
             this.isInitialised = true;
         }
     }
 
+    @PreDestroy
+    protected void shutdown() {
+        if(monitorName != null){
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(monitorName);
+            } catch (JMException jmException) {
+                getLogger().debug(".shutdown(): Could not unregister cache monitor --> {}", jmException.getMessage());
+            }
+            monitorName = null;
+        }
+    }
+
+    /**
+     * Registers a VirtualDBCacheMonitor for this cache with the platform MBeanServer. Monitoring is not essential,
+     * so a failure to register is logged and otherwise ignored.
+     */
+    private void registerMonitor(){
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName candidateName = new ObjectName(VirtualDBCacheMonitor.OBJECT_NAME_PREFIX + ObjectName.quote(getCacheClassName()));
+            if(mBeanServer.isRegistered(candidateName)){
+                mBeanServer.unregisterMBean(candidateName);
+            }
+            mBeanServer.registerMBean(new VirtualDBCacheMonitor(this), candidateName);
+            this.monitorName = candidateName;
+        } catch (JMException jmException) {
+            getLogger().warn(".registerMonitor(): Could not register cache monitor --> {}", jmException.getMessage());
+        }
+    }
+
+    /**
+     * Builds the Caffeine cache used when the backend is CAFFEINE. Caffeine handles both size-based eviction and
+     * expiry itself, so the removal listener only has to tidy up the Identifier index for entries
+     * it evicts. Expiry follows each entry's own expiry time (as its retirement age may depend on its content), and
+     * is extended on read for the SLIDING policy.
+     *
+     * @return The Caffeine cache's ConcurrentMap view
+     */
+    private ConcurrentMap<IdType, VirtualDBCacheEntry> buildCaffeineCache(){
+        Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
+        if(getCacheMemoryBudgetInBytes() > 0){
+            cacheBuilder.maximumWeight(getCacheMemoryBudgetInBytes());
+            cacheBuilder.weigher((IdType id, VirtualDBCacheEntry entry) -> entry.getWeight());
+        } else {
+            cacheBuilder.maximumSize(specifyCacheMaximumSize());
+        }
+        Cache<IdType, VirtualDBCacheEntry> caffeineCache = cacheBuilder
+                .expireAfter(new Expiry<IdType, VirtualDBCacheEntry>() {
+                    @Override
+                    public long expireAfterCreate(IdType id, VirtualDBCacheEntry entry, long currentTime) {
+                        return(TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.getExpiryTime() - expiryService.getCoarseTime())));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(IdType id, VirtualDBCacheEntry entry, long currentTime, long currentDuration) {
+                        return(expireAfterCreate(id, entry, currentTime));
+                    }
+
+                    @Override
+                    public long expireAfterRead(IdType id, VirtualDBCacheEntry entry, long currentTime, long currentDuration) {
+                        if(specifyCacheExpiryPolicy() == VirtualDBCacheExpiryPolicyEnum.SLIDING){
+                            return(TimeUnit.MILLISECONDS.toNanos(entry.getRetirementAge()));
+                        }
+                        return(currentDuration);
+                    }
+                })
+                .removalListener((IdType id, VirtualDBCacheEntry entry, RemovalCause cause) -> {
+                    // A REPLACED entry's index is maintained by the put that replaced it
+                    if(id != null && entry != null && cause != RemovalCause.REPLACED && cause.wasEvicted()){
+                        onCacheEntryEvicted(id, entry, cause);
+                    }
+                })
+                .build();
+        return(caffeineCache.asMap());
+    }
+
+    /**
+     * Tidies up after an entry has been evicted by the backend (rather than removed by this class). The removal
+     * listener runs asynchronously, so the id may have been re-cached in the meantime - in which case only the
+     * index entries the evicted entry doesn't share with the current one are removed.
+     *
+     * @param id The (IdType) key of the evicted Resource
+     * @param evictedEntry The evicted entry
+     * @param cause Why Caffeine evicted the entry
+     */
+    private void onCacheEntryEvicted(IdType id, VirtualDBCacheEntry evictedEntry, RemovalCause cause){
+        getLogger().trace(".onCacheEntryEvicted(): resource evicted --> {}, cause --> {}", id, cause);
+        switch(cause){
+            case EXPIRED:
+                recordEviction(VirtualDBCacheEvictionCauseEnum.EXPIRED);
+                break;
+            case COLLECTED:
+                recordEviction(VirtualDBCacheEvictionCauseEnum.MEMORY_PRESSURE);
+                break;
+            default:
+                recordEviction(VirtualDBCacheEvictionCauseEnum.SIZE);
+        }
+        recordWeightChange(-evictedEntry.getWeight());
+        evictedEntry.getResourceHolder().release();
+        resourceCache.onEntryEvicted(id, evictedEntry);
+    }
+
     /**
-     * The function adds a Resource to the Resource Cache. It wraps the Resource in a CacheResourceEntry,
+     * The function adds a Resource to the Resource Cache. It wraps the Resource in a VirtualDBCacheEntry,
      * which enables the cache management functions to ascertain the age of the cache entry for clean-up
-     * purposes.
+     * purposes, and schedules the entry's retirement with the VirtualDBCacheExpiryService. If the cache already
+     * holds the same content (by content digest) for the Resource's id, the existing entry is kept and only its
+     * expiry time is refreshed.
      *
      * @param resourceToAdd A FHIR::Resource that is to be added to the Cache.
      * @return A VirtualDBMethodOutcome instance detailing the success (or otherwise) of the Resource
      * addition to the Cache.
      */
     private VirtualDBMethodOutcome addResourceToCache(Resource resourceToAdd){
-        // Perform house-keeping on the Cache
-        purgeResourcesFromCache();
-        // House-keeping done
+        return(addResourceToCache(resourceToAdd, true));
+    }
+
+    /**
+     * As addResourceToCache(Resource), but the cache's memory budget is only enforced if enforceBudget is true -
+     * bulk operations add all their Resources first and then enforce the budget once.
+     *
+     * @param resourceToAdd A FHIR::Resource that is to be added to the Cache.
+     * @param enforceBudget Whether to enforce the cache's memory budget once the Resource has been added
+     * @return A VirtualDBMethodOutcome instance detailing the success (or otherwise) of the Resource
+     * addition to the Cache.
+     */
+    private VirtualDBMethodOutcome addResourceToCache(Resource resourceToAdd, boolean enforceBudget){
         String activityLocation = getCacheClassName() + "::addResourceToCache()";
         if(resourceToAdd == null) {
             getLogger().error(".addResourceToCache(): resourceToAdd (Resource) is null, failing out");
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.CREATE, VirtualDBActionStatusEnum.CREATION_FAILURE, "Parameter resourceToAdd (Resource) content is invalid");
             return (vdbOutcome);
         }
-        IdType resourceId = resourceToAdd.getIdElement();
         if(!resourceToAdd.hasId()){
             String newID = resourceToAdd.getResourceType().toString() + ":" + UUID.randomUUID().toString();
             resourceToAdd.setId(newID);
-            resourceId = new IdType(newID);
-        }
-        if(resourceCacheById.containsKey(resourceId)){
-            CacheResourceEntry resourceEntry = resourceCacheById.get(resourceId);
-            if(resourceEntry != null){
-                Resource existingResource = resourceEntry.getResource();
-                if(areTheSame(existingResource, resourceToAdd)){
-                    VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED, activityLocation);
-                    return(vdbOutcome);
-                }
+        }
+        IdType resourceId = normaliseId(resourceToAdd.getIdElement());
+        // Encoded just once: the digest, weight and stored form are all derived from this encoding
+        String encodedContent = resourceCodec.encodeContent(resourceToAdd);
+        byte[] contentDigest = resourceCodec.computeContentDigest(encodedContent);
+        VirtualDBCacheEntry resourceEntry = resourceCache.get(resourceId);
+        if(resourceEntry != null && isStillValidCacheResource(resourceEntry) && hasSameContent(resourceEntry, resourceToAdd, contentDigest)){
+            refreshCacheEntryExpiry(resourceId, resourceEntry);
+            VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED, activityLocation);
+            return(vdbOutcome);
+        }
+        // Any existing entry is replaced in a single step by putEntryAndIndex(), rather than removed first
+        VirtualDBCacheEntry newEntry = createCacheEntry(resourceToAdd, encodedContent, contentDigest);
+        putEntryAndIndex(resourceId, newEntry);
+        clearUnknownIdentifiers(newEntry);
+        if(specifyCacheBackend() != VirtualDBCacheBackendEnum.CAFFEINE) {
+            expiryService.scheduleExpiry(this, resourceId, newEntry);
+            if(enforceBudget) {
+                enforceCacheMemoryBudget();
             }
-            resourceCacheById.remove(resourceId);
-            resourceCacheLockSet.remove(resourceId);
         }
-        resourceCacheLockSet.put(resourceId, new Object());
-        CacheResourceEntry newEntry = new CacheResourceEntry(resourceToAdd);
-        resourceCacheById.put(resourceId, newEntry);
         VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_FINISH, activityLocation);
         vdbOutcome.setResource(resourceToAdd);
         return(vdbOutcome);
@@ -129,9 +485,9 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.DELETE, VirtualDBActionStatusEnum.DELETE_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return(vdbOutcome);
         }
-        if(resourceCacheById.containsKey(id)) {
-            resourceCacheById.remove(id);
-            resourceCacheLockSet.remove(id);
+        id = normaliseId(id);
+        if(resourceCache.containsId(id)) {
+            removeEntryAndIndex(id);
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(id, VirtualDBActionStatusEnum.DELETE_FINISH, activityLocation);
             return (vdbOutcome);
         } else {
@@ -153,24 +509,28 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.REVIEW, VirtualDBActionStatusEnum.REVIEW_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return(vdbOutcome);
         }
-        CacheResourceEntry foundResourceEntry = null;
-        for(CacheResourceEntry currentResourceEntry: resourceCacheById.values()){
-            boolean found = false;
-            List<Identifier> identifiers = resolveIdentifierSet(currentResourceEntry.getResource());
-            for(Identifier currentIdentifier: identifiers){
-                boolean systemIsSame = identifier.getSystem().equals(currentIdentifier.getSystem());
-                boolean valueIsSame = identifier.getValue().equals(currentIdentifier.getValue());
-                if(systemIsSame && valueIsSame){
-                    found = true;
-                    foundResourceEntry = currentResourceEntry;
-                    break;
+        VirtualDBCacheEntry foundResourceEntry = null;
+        VirtualDBIdentifierKey identifierKey = buildIdentifierIndexKey(identifier);
+        IdType indexedId = resourceCache.resolveId(identifierKey);
+        if(indexedId != null){
+            VirtualDBCacheEntry indexedEntry = resourceCache.get(indexedId);
+            if(indexedEntry != null && indexedEntry.getIdentifierKeys().contains(identifierKey)){
+                if(isStillValidCacheResource(indexedEntry)) {
+                    foundResourceEntry = indexedEntry;
+                } else {
+                    expireCacheEntry(indexedId, indexedEntry);
                 }
-            }
-            if(found){
-                break;
+            } else {
+                getLogger().trace(".getResourceFromCache(): removing stale identifier index entry --> {}", identifierKey);
+                resourceCache.removeStaleIdentifierKey(identifierKey, indexedId);
             }
         }
-        if(foundResourceEntry == null) {
+        Resource foundResource = null;
+        if(foundResourceEntry != null){
+            foundResource = readCacheResource(indexedId, foundResourceEntry);
+        }
+        if(foundResource == null) {
+            cacheStatistics.recordMiss();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
@@ -194,10 +554,12 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             getLogger().debug(".getResourceFromCache(): exit, could not find resource");
             return (vdbOutcome);
         } else {
+            cacheStatistics.recordHit();
+            extendCacheEntryExpiry(foundResourceEntry);
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
-            vdbOutcome.setResource(foundResourceEntry.getResource());
+            vdbOutcome.setResource(foundResource);
             vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
             vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
             OperationOutcome opOutcome = new OperationOutcome();
@@ -215,15 +577,39 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             newOutcomeComponent.setDetails(details);
             opOutcome.addIssue(newOutcomeComponent);
             vdbOutcome.setOperationOutcome(opOutcome);
-            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", foundResourceEntry.getResource());
+            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", foundResource);
             return (vdbOutcome);
         }
     }
 
     /**
+     * Reads the Resource from a cache entry. The content of an entry that has just been replaced may no longer be
+     * readable (its off-heap block having been released), in which case the replacement entry is read instead -
+     * so a reader racing with a sync sees either the old or the new Resource, never a miss.
      *
-     * @param id
-     * @return
+     * @param id The (IdType) key of the Resource
+     * @param cacheEntry The entry found against the id
+     * @return The Resource, or null if the entry has been removed (rather than replaced) or can't be decoded
+     */
+    private Resource readCacheResource(IdType id, VirtualDBCacheEntry cacheEntry){
+        Resource resource = cacheEntry.getResource();
+        while(resource == null){
+            VirtualDBCacheEntry currentEntry = resourceCache.get(id);
+            if(currentEntry == null || currentEntry == cacheEntry){
+                return(null);
+            }
+            cacheEntry = currentEntry;
+            resource = cacheEntry.getResource();
+        }
+        return(resource);
+    }
+
+    /**
+     * Retrieves a Resource from the cache using its (IdType) id.
+     *
+     * @param id The id of the Resource
+     * @return A VirtualDBMethodOutcome with a status of REVIEW_FINISH (and the Resource) if it is in the cache,
+     * or REVIEW_RESOURCE_NOT_IN_CACHE if it isn't.
      */
     private VirtualDBMethodOutcome getResourceFromCache(IdType id) {
         getLogger().debug(".getResourceFromCache(): Entry, id (IdType) --> {}", id);
@@ -233,12 +619,13 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.REVIEW, VirtualDBActionStatusEnum.REVIEW_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return (vdbOutcome);
         }
-        if(resourceCacheById.containsKey(id)){
+        Resource foundResource = lookupCacheResource(normaliseId(id));
+        if(foundResource == null){
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setId(id);
             vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
-            vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FAILURE);
+            vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE);
             OperationOutcome opOutcome = new OperationOutcome();
             OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
             newOutcomeComponent.setCode(OperationOutcome.IssueType.NOTFOUND);
@@ -258,10 +645,9 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             return (vdbOutcome);
         } else {
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
-            CacheResourceEntry resourceEntry = resourceCacheById.get(id);
             vdbOutcome.setCreated(false);
             vdbOutcome.setId(id);
-            vdbOutcome.setResource(resourceEntry.getResource());
+            vdbOutcome.setResource(foundResource);
             vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
             vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
             OperationOutcome opOutcome = new OperationOutcome();
@@ -279,62 +665,402 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             newOutcomeComponent.setDetails(details);
             opOutcome.addIssue(newOutcomeComponent);
             vdbOutcome.setOperationOutcome(opOutcome);
-            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", resourceEntry.getResource());
+            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", foundResource);
             return (vdbOutcome);
         }
     }
 
 
+    /**
+     * Finds a Resource by its (normalised) id, retiring the entry if it has expired, and records the hit or miss.
+     *
+     * @param cacheId The normalised id of the Resource
+     * @return The Resource, or null if it isn't in the cache
+     */
+    private Resource lookupCacheResource(IdType cacheId){
+        VirtualDBCacheEntry resourceEntry = resourceCache.get(cacheId);
+        if(resourceEntry != null && !isStillValidCacheResource(resourceEntry)){
+            expireCacheEntry(cacheId, resourceEntry);
+            resourceEntry = null;
+        }
+        Resource foundResource = null;
+        if(resourceEntry != null){
+            foundResource = readCacheResource(cacheId, resourceEntry);
+        }
+        if(foundResource == null){
+            cacheStatistics.recordMiss();
+        } else {
+            cacheStatistics.recordHit();
+            extendCacheEntryExpiry(resourceEntry);
+        }
+        return(foundResource);
+    }
+
     /**
      * This is a helper method, and is not intended for use outside of finding Resources
      * @return A collection of ALL the Resources within the Cache
+     * @deprecated Copies the whole cache on each call; use streamResources() instead
      */
+    @Deprecated
     public Collection<Resource> getAllResourcesFromCache(){
         getLogger().debug(".getAllResourcesFromCache(): Entry");
-        ArrayList<Resource> resourceSet = new ArrayList<>();
-        for(CacheResourceEntry resourceEntry: resourceCacheById.values() ){
-            resourceSet.add(resourceEntry.getResource());
-        }
+        List<Resource> resourceSet = streamResources(null, false).collect(Collectors.toList());
         getLogger().debug(".getAllResourcesFromCache(): Exit");
         return(resourceSet);
     }
 
     /**
-     * The method is called after every add/remove to clear Resources from the cache that have expired. It's not an
-     * ideal solution but will keep the cache to a manageable size during the first few releases.
+     * Scans the (unexpired) Resources within the cache, without first copying them. The scan runs directly over
+     * the cache's map, so is weakly consistent: it sees some, none or all of the changes made while it runs. With
+     * parallel set, the map is split across the common ForkJoinPool, so that a scan of a large cache (and the
+     * decoding of its COMPRESSED or OFF_HEAP entries) can use multiple cores.
+     *
+     * @param filter Applied to each Resource within the scan (null for all Resources)
+     * @param parallel Whether the returned Stream is parallel
+     * @return A Stream of the Resources that pass the filter
+     */
+    public Stream<Resource> streamResources(Predicate<Resource> filter, boolean parallel){
+        Stream<Resource> resourceStream = StreamSupport.stream(resourceCache.entrySet().spliterator(), parallel)
+                .filter(currentEntry -> isStillValidCacheResource(currentEntry.getValue()))
+                .map(currentEntry -> readCacheResource(currentEntry.getKey(), currentEntry.getValue()))
+                .filter(Objects::nonNull);
+        if(filter != null){
+            resourceStream = resourceStream.filter(filter);
+        }
+        return(resourceStream);
+    }
+
+    /**
+     * Wraps the Resource in a new VirtualDBCacheEntry, stamping it with the current (coarse) time and an expiry
+     * time based on its retirement age (see specifyResourceRetirementInSeconds()). The Resource is held in the form
+     * given by specifyCacheStorageMode(), and its Identifier index keys are captured up-front so that index
+     * maintenance never needs to decode it.
+     *
+     * @param resource The Resource to be cached
+     * @param encodedContent The Resource's content, as encoded by VirtualDBCacheResourceCodec.encodeContent()
+     * @param contentDigest The Resource's content digest
+     * @return A new VirtualDBCacheEntry for the Resource
+     */
+    private VirtualDBCacheEntry createCacheEntry(Resource resource, String encodedContent, byte[] contentDigest){
+        long currentTime = expiryService.getCoarseTime();
+        long ageThreshold = Long.valueOf(specifyResourceRetirementInSeconds(resource)) * 1000;
+        Meta meta = null;
+        if(resource.hasMeta()){
+            meta = resource.getMeta().copy();
+        }
+        VirtualDBCacheResourceHolder resourceHolder;
+        int weight;
+        VirtualDBCacheStorageModeEnum storageMode = specifyCacheStorageMode();
+        if(storageMode == VirtualDBCacheStorageModeEnum.COMPRESSED || storageMode == VirtualDBCacheStorageModeEnum.OFF_HEAP){
+            byte[] compressedResource = resourceCodec.compress(encodedContent);
+            int encodedLength = encodedContent.getBytes(StandardCharsets.UTF_8).length;
+            VirtualDBCacheOffHeapBlock offHeapBlock = null;
+            if(storageMode == VirtualDBCacheStorageModeEnum.OFF_HEAP){
+                offHeapBlock = offHeapStore.allocate(compressedResource);
+                cacheStatistics.recordOffHeapAllocation(offHeapBlock != null);
+            }
+            if(offHeapBlock != null){
+                resourceHolder = new VirtualDBCacheOffHeapResourceHolder(offHeapBlock, encodedLength, meta, offHeapStore, resourceCodec);
+                weight = OFF_HEAP_ENTRY_WEIGHT;
+            } else {
+                // Either COMPRESSED, or the off-heap store is full - in which case hold the content on the heap
+                resourceHolder = new VirtualDBCacheCompressedResourceHolder(compressedResource, encodedLength, meta, resourceCodec);
+                weight = compressedResource.length;
+            }
+        } else {
+            resourceHolder = new VirtualDBCacheObjectResourceHolder(resource);
+            weight = encodedContent.length();
+        }
+        List<VirtualDBIdentifierKey> identifierKeys = new ArrayList<>();
+        for(Identifier currentIdentifier: resolveIdentifierSet(resource)){
+            VirtualDBIdentifierKey identifierKey = buildIdentifierIndexKey(currentIdentifier);
+            if(identifierKey != null && !identifierKeys.contains(identifierKey)){
+                identifierKeys.add(identifierKey);
+            }
+        }
+        List<IdType> referencedIds = new ArrayList<>();
+        for(Reference currentReference: resolveReferenceSet(resource)){
+            IdType referencedId = normaliseReference(currentReference);
+            if(referencedId != null && !referencedIds.contains(referencedId)){
+                referencedIds.add(referencedId);
+            }
+        }
+        VirtualDBCacheEntry newEntry = new VirtualDBCacheEntry(resourceHolder, currentTime, currentTime + ageThreshold, weight, identifierKeys, referencedIds, contentDigest, meta);
+        return(newEntry);
+    }
+
+    /**
+     * Compares the content of a cache entry with that of a Resource, using their content digests and meta elements
+     * (falling back to areTheSame() for an entry without a digest).
+     *
+     * @param cacheEntry The existing cache entry
+     * @param resource The Resource to be compared
+     * @param contentDigest The Resource's content digest
+     * @return True if the cache entry holds the same content and meta as the Resource
+     */
+    private boolean hasSameContent(VirtualDBCacheEntry cacheEntry, Resource resource, byte[] contentDigest){
+        if(cacheEntry.getContentDigest() != null){
+            if(!VirtualDBCacheResourceCodec.isSameContent(cacheEntry.getContentDigest(), contentDigest)){
+                return(false);
+            }
+            return(VirtualDBCacheResourceCodec.isSameMeta(cacheEntry.getMeta(), resource.hasMeta() ? resource.getMeta() : null));
+        }
+        Resource existingResource = cacheEntry.getResource();
+        if(existingResource == null){
+            return(false);
+        }
+        return(areTheSame(existingResource, resource));
+    }
+
+    /**
+     * Pushes back the expiry time of an entry that has just been read, if the cache uses the SLIDING expiry policy.
+     * The VirtualDBCacheExpiryService re-schedules (rather than retires) an entry whose expiry time has moved on,
+     * and the Caffeine backend extends the entry's expiry itself on read (see buildCaffeineCache()).
+     *
+     * @param cacheEntry The cache entry that has been read
+     */
+    private void extendCacheEntryExpiry(VirtualDBCacheEntry cacheEntry){
+        if(specifyCacheExpiryPolicy() != VirtualDBCacheExpiryPolicyEnum.SLIDING){
+            return;
+        }
+        long extendedExpiryTime = expiryService.getCoarseTime() + cacheEntry.getRetirementAge();
+        if(extendedExpiryTime > cacheEntry.getExpiryTime()){
+            cacheEntry.setExpiryTime(extendedExpiryTime);
+        }
+    }
+
+    /**
+     * Pushes back the expiry time of an entry whose content has just been confirmed as current.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param cacheEntry The cache entry to be refreshed
+     */
+    private void refreshCacheEntryExpiry(IdType id, VirtualDBCacheEntry cacheEntry){
+        cacheEntry.setExpiryTime(expiryService.getCoarseTime() + cacheEntry.getRetirementAge());
+        cacheEntry.clearRefreshClaim();
+        if(specifyCacheBackend() == VirtualDBCacheBackendEnum.CAFFEINE){
+            // Caffeine tracks the write time itself, so re-write the (same) entry to reset it
+            resourceCache.touch(id, cacheEntry);
+        }
+    }
+
+    //
+    // Memory Budget
+    //
+
+    /**
+     * @return The total (estimated) encoded size, in bytes, of the Resources within this cache
+     */
+    public long getCacheWeight(){
+        return(cacheWeight.get());
+    }
+
+    private void recordWeightChange(long weightDelta){
+        if(weightDelta != 0) {
+            cacheWeight.addAndGet(weightDelta);
+            memoryManager.recordWeightChange(weightDelta);
+        }
+    }
+
+    /**
+     * Evicts entries if the cache has exceeded its own memory budget. The Caffeine backend enforces the budget
+     * itself (as its maximumWeight), so this is only needed for the CONCURRENT_MAP backend.
+     */
+    private void enforceCacheMemoryBudget(){
+        long budget = getCacheMemoryBudgetInBytes();
+        if(budget <= 0){
+            return;
+        }
+        long currentWeight = getCacheWeight();
+        if(currentWeight > budget){
+            long excessWeight = currentWeight - (long)(budget * CACHE_RECLAIM_TARGET_FRACTION);
+            getLogger().debug(".enforceCacheMemoryBudget(): Cache budget exceeded, evicting --> {} bytes", excessWeight);
+            shedCacheWeight(excessWeight, VirtualDBCacheEvictionCauseEnum.SIZE);
+        }
+    }
+
+    /**
+     * Evicts entries until (at least) the requested weight has been shed, or the cache is empty. Rather than
+     * maintaining a separate ordering structure, entries are sampled (EVICTION_SAMPLE_SIZE at a time) from the
+     * map and the one closest to its expiry time is evicted from each sample.
      *
-     * TODO Need to improve the efficiency and mechanism used to clear content from the cache.
+     * @param weightToShed The (estimated, encoded) number of bytes to be freed
+     * @param cause The reason the weight is being shed (for the cache statistics)
+     * @return The weight actually shed
      */
-    private void purgeResourcesFromCache(){
-        getLogger().debug(".purgeResourcesFromCache(): Entry");
-        Enumeration<IdType> idEnumeration = resourceCacheById.keys();
-        while(idEnumeration.hasMoreElements()){
-            IdType id = idEnumeration.nextElement();
-            CacheResourceEntry resourceEntry = resourceCacheById.get(id);
-            if(!isStillValidCacheResource(resourceEntry)){
-                getLogger().trace(".purgeResourcesFromCache(): deleting resource --> {}", id);
-                deleteResourceFromCache(id);
+    long shedCacheWeight(long weightToShed, VirtualDBCacheEvictionCauseEnum cause){
+        long weightShed = 0;
+        Iterator<Map.Entry<IdType, VirtualDBCacheEntry>> entryIterator = resourceCache.entrySet().iterator();
+        while(weightShed < weightToShed && entryIterator.hasNext()){
+            Map.Entry<IdType, VirtualDBCacheEntry> evictionCandidate = null;
+            int sampleCount = 0;
+            while(sampleCount < EVICTION_SAMPLE_SIZE && entryIterator.hasNext()){
+                Map.Entry<IdType, VirtualDBCacheEntry> currentEntry = entryIterator.next();
+                if(evictionCandidate == null || currentEntry.getValue().getExpiryTime() < evictionCandidate.getValue().getExpiryTime()){
+                    evictionCandidate = currentEntry;
+                }
+                sampleCount += 1;
+            }
+            if(evictionCandidate != null){
+                VirtualDBCacheEntry evictedEntry = removeEntryAndIndex(evictionCandidate.getKey(), evictionCandidate.getValue(), cause);
+                if(evictedEntry != null){
+                    getLogger().trace(".shedCacheWeight(): evicted resource --> {}", evictionCandidate.getKey());
+                    weightShed += evictedEntry.getWeight();
+                }
             }
         }
-        getLogger().debug(".purgeResourcesFromCache(): Exit");
+        return(weightShed);
     }
 
     /**
-     * This method does a simple comparison between the age of the resource entry in the cache and the
-     * age-threshold and returns true if the resource is still "young enough".
+     * Entries are retired by the VirtualDBCacheExpiryService in the background, but as that only runs once per
+     * tick this method is also used on the read path to make sure an expired entry is never returned.
      *
      * @param testEntry The Cache Entry to be tested to see if it shouldn't be flushed.
      * @return True if the Cache Entry is still valid, false if it should be flushed.
      */
-
-    private boolean isStillValidCacheResource(CacheResourceEntry testEntry){
-        Long resourceEntryAge = Date.from(Instant.now()).getTime() - testEntry.getTouchDate().getTime();
-        Long ageThreshold = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
-        if(resourceEntryAge > ageThreshold){
+    private boolean isStillValidCacheResource(VirtualDBCacheEntry testEntry){
+        if(testEntry == null){
             return(false);
+        }
+        return(!testEntry.hasExpired(expiryService.getCoarseTime()));
+    }
+
+    /**
+     * Called by the VirtualDBCacheExpiryService once an entry has reached its expiry time. The entry is only
+     * removed if it hasn't since been replaced.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param expiredEntry The entry that has expired
+     */
+    @Override
+    public void expireCacheEntry(IdType id, VirtualDBCacheEntry expiredEntry){
+        getLogger().trace(".expireCacheEntry(): retiring resource --> {}", id);
+        removeEntryAndIndex(id, expiredEntry, VirtualDBCacheEvictionCauseEnum.EXPIRED);
+    }
+
+    /**
+     * Normalises a Resource id into the form used as the key within the cache: an unqualified, version-less
+     * id of the form ResourceType/idPart. This means the same Resource is found regardless of whether it was
+     * referenced by a full URL, a versioned id or just its logical id.
+     *
+     * @param id The (IdType) id of a Resource
+     * @return The normalised id
+     */
+    protected IdType normaliseId(IdType id){
+        if(id == null || !id.hasIdPart()){
+            return(id);
+        }
+        String resourceType = getCacheClassName();
+        if(id.hasResourceType()){
+            resourceType = id.getResourceType();
+        }
+        IdType normalisedId = new IdType(resourceType, id.getIdPart());
+        return(normalisedId);
+    }
+
+    /**
+     * @return The memory budget (in bytes) in force for this cache, once it is initialised
+     */
+    public long getCacheMemoryBudgetInBytes(){
+        return(cacheMemoryBudgetInBytes);
+    }
+
+    /**
+     * @return The usage counters (hits, misses, loads and evictions) for this cache
+     */
+    public VirtualDBCacheStatistics getCacheStatistics(){
+        return(cacheStatistics);
+    }
+
+    /**
+     * @return The (shared) off-heap store used by caches with the OFF_HEAP storage mode
+     */
+    public VirtualDBCacheOffHeapStore getOffHeapStore(){
+        return(offHeapStore);
+    }
+
+    /**
+     * @param resource A Resource of this cache's type
+     * @return How long the Resource is held before it is retired (see specifyResourceRetirementInSeconds())
+     */
+    public int getResourceRetirementInSeconds(Resource resource){
+        return(specifyResourceRetirementInSeconds(resource));
+    }
+
+    /**
+     * @return The search-result cache for this Resource type, or null if it is disabled
+     */
+    public VirtualDBSearchResultCache getSearchResultCache(){
+        return(searchResultCache);
+    }
+
+    /**
+     * @return The number of Resources within this cache (an estimate, for the CAFFEINE backend)
+     */
+    public long getCacheEntryCount(){
+        return(resourceCache.size());
+    }
+
+    //
+    // Identifier Index
+    //
+
+    /**
+     * Builds the key used within the Identifier (secondary) index and the negative cache.
+     *
+     * @param identifier The Identifier to build the key for
+     * @return The normalised key, or null if the Identifier has no value (and so can't be indexed)
+     */
+    protected VirtualDBIdentifierKey buildIdentifierIndexKey(Identifier identifier){
+        return(VirtualDBIdentifierKey.fromIdentifier(identifier));
+    }
+
+    /**
+     * Inserts (or replaces) the cache entry for the given id, re-indexing its Identifiers, and accounts for the
+     * change in cache weight. A replacement is a single swap of the entry, so readers never see a transient miss
+     * by id or by Identifier.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param newEntry The VirtualDBCacheEntry to be stored
+     */
+    private void putEntryAndIndex(IdType id, VirtualDBCacheEntry newEntry){
+        VirtualDBCacheEntry replacedEntry = resourceCache.put(id, newEntry);
+        if(replacedEntry != null){
+            recordWeightChange(newEntry.getWeight() - replacedEntry.getWeight());
+            replacedEntry.getResourceHolder().release();
         } else {
-            return(true);
+            recordWeightChange(newEntry.getWeight());
+        }
+    }
+
+    /**
+     * Removes the cache entry for the given id and removes its Identifiers from the Identifier index.
+     *
+     * @param id The (IdType) key of the Resource
+     * @return The removed VirtualDBCacheEntry, or null if there wasn't one
+     */
+    private VirtualDBCacheEntry removeEntryAndIndex(IdType id){
+        return(removeEntryAndIndex(id, null, VirtualDBCacheEvictionCauseEnum.REMOVED));
+    }
+
+    /**
+     * Removes the cache entry for the given id (but only if it is the expectedEntry, where one is given) and
+     * removes its Identifiers from the Identifier index.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param expectedEntry The entry expected to be held against the id, or null to remove whatever is there
+     * @param cause The reason the entry is being removed (for the cache statistics)
+     * @return The removed VirtualDBCacheEntry, or null if nothing was removed
+     */
+    private VirtualDBCacheEntry removeEntryAndIndex(IdType id, VirtualDBCacheEntry expectedEntry, VirtualDBCacheEvictionCauseEnum cause){
+        VirtualDBCacheEntry removedEntry = resourceCache.remove(id, expectedEntry);
+        if(removedEntry != null){
+            recordEviction(cause);
+            recordWeightChange(-removedEntry.getWeight());
+            removedEntry.getResourceHolder().release();
         }
+        return(removedEntry);
     }
 
     /**
@@ -352,6 +1078,221 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         return(bestIdentifier);
     }
 
+    //
+    // Refresh-Ahead
+    //
+
+    /**
+     * Claims the refresh-ahead reload of a Resource, if it is due. A reload is due once the entry has been resident
+     * for more than specifyRefreshAheadFraction() of its retirement age, and is only handed out once per entry
+     * (until the entry is replaced, or refreshed with unchanged content). The entry continues to be served from
+     * the cache while the reload is in progress.
+     *
+     * @param id The id of the Resource
+     * @return True if the caller should reload the Resource
+     */
+    public boolean claimRefresh(IdType id){
+        double refreshAheadFraction = specifyRefreshAheadFraction();
+        if(id == null || refreshAheadFraction <= 0.0 || refreshAheadFraction >= 1.0){
+            return(false);
+        }
+        IdType cacheId = normaliseId(id);
+        VirtualDBCacheEntry resourceEntry = resourceCache.get(cacheId);
+        if(resourceEntry == null || !isStillValidCacheResource(resourceEntry)){
+            return(false);
+        }
+        long refreshTime = resourceEntry.getExpiryTime() - (long)(resourceEntry.getRetirementAge() * (1.0 - refreshAheadFraction));
+        if(expiryService.getCoarseTime() < refreshTime){
+            return(false);
+        }
+        return(resourceEntry.claimRefresh());
+    }
+
+    //
+    // Reference Index
+    //
+
+    /**
+     * Normalises a (literal) Reference into the id form used by the reference index: ResourceType/idPart, without
+     * any base URL or version.
+     *
+     * @param reference The Reference
+     * @return The normalised id, or null if the Reference isn't a literal reference to a typed Resource (e.g. it
+     * is a contained, logical or display-only reference)
+     */
+    protected IdType normaliseReference(Reference reference){
+        if(reference == null || !reference.hasReference()){
+            return(null);
+        }
+        IdType referencedId = new IdType(reference.getReference());
+        if(referencedId.isLocal() || !referencedId.hasResourceType() || !referencedId.hasIdPart()){
+            return(null);
+        }
+        IdType normalisedId = new IdType(referencedId.getResourceType(), referencedId.getIdPart());
+        return(normalisedId);
+    }
+
+    /**
+     * Finds the cached Resources that reference the given Resource (via the References returned by
+     * resolveReferenceSet()). Only the cache's content is consulted, so the result is complete only if all the
+     * referencing Resources happen to be cached.
+     *
+     * @param referencedId The id of the referenced Resource (which must include its ResourceType)
+     * @return The cached Resources referencing it
+     */
+    public List<Resource> getResourcesReferencing(IdType referencedId){
+        getLogger().debug(".getResourcesReferencing(): Entry, referencedId --> {}", referencedId);
+        List<Resource> referencingResources = new ArrayList<>();
+        if(referencedId == null || !referencedId.hasResourceType() || !referencedId.hasIdPart()){
+            return(referencingResources);
+        }
+        IdType normalisedId = new IdType(referencedId.getResourceType(), referencedId.getIdPart());
+        for(IdType referencingId: resourceCache.getReferencingIds(normalisedId)){
+            VirtualDBCacheEntry referencingEntry = resourceCache.get(referencingId);
+            if(referencingEntry == null || !isStillValidCacheResource(referencingEntry)){
+                continue;
+            }
+            Resource referencingResource = readCacheResource(referencingId, referencingEntry);
+            if(referencingResource != null){
+                referencingResources.add(referencingResource);
+            }
+        }
+        getLogger().debug(".getResourcesReferencing(): Exit, number found --> {}", referencingResources.size());
+        return(referencingResources);
+    }
+
+    //
+    // Completeness & In-Cache Search
+    //
+
+    /**
+     * Starts a load of every Resource of the cache's type (e.g. a warm-up).
+     *
+     * @return A token to be passed to markCacheComplete() once the load has finished
+     */
+    public long beginCompleteLoad(){
+        return(completenessState.get() >>> 1);
+    }
+
+    /**
+     * Marks the cache as holding every Resource of its type - unless completeness isn't tracked for the cache, or
+     * an entry has been evicted since the load began (in which case the cache may be missing it).
+     *
+     * @param loadToken The token returned by beginCompleteLoad() when the load began
+     * @return True if the cache is now marked complete
+     */
+    public boolean markCacheComplete(long loadToken){
+        if(!specifyCacheCompletenessTracking()){
+            return(false);
+        }
+        boolean isMarkedComplete = false;
+        long currentState = completenessState.get();
+        // Only set the flag if no eviction has happened since the load began, as one atomic step
+        while((currentState >>> 1) == loadToken){
+            if(completenessState.compareAndSet(currentState, currentState | 1L)){
+                isMarkedComplete = true;
+                break;
+            }
+            currentState = completenessState.get();
+        }
+        getLogger().debug(".markCacheComplete(): cache complete --> {}", isMarkedComplete);
+        return(isMarkedComplete);
+    }
+
+    /**
+     * @return True if the cache currently holds every Resource of its type
+     */
+    public boolean isCacheComplete(){
+        return((completenessState.get() & 1L) == 1L);
+    }
+
+    /**
+     * Starts a new completeness generation and clears the "complete" flag, in one atomic step.
+     */
+    private void markCacheIncomplete(){
+        completenessState.updateAndGet(currentState -> ((currentState >>> 1) + 1) << 1);
+    }
+
+    /**
+     * Records the eviction of an entry. Any eviction other than an explicit removal (where the Resource no longer
+     * exists) means the cache is no longer complete.
+     *
+     * @param cause The reason the entry left the cache
+     */
+    private void recordEviction(VirtualDBCacheEvictionCauseEnum cause){
+        cacheStatistics.recordEviction(cause);
+        if(cause != VirtualDBCacheEvictionCauseEnum.REMOVED){
+            markCacheIncomplete();
+        }
+    }
+
+    /**
+     * Answers a search from the cache alone, which is only possible if the cache is complete, the search is one
+     * the cache may answer (see specifyCacheEvaluableSearches()) and its criteria can be evaluated by the
+     * VirtualDBCacheSearchEvaluator.
+     *
+     * @param searchName The search being performed
+     * @param parameterSet The search criteria
+     * @return The matching Resources, or null if the search must go to the Sources-of-Truth
+     */
+    public List<Resource> searchCache(SearchNameEnum searchName, Map<Property, Serializable> parameterSet){
+        if(!isCacheComplete() || !searchEvaluator.isEvaluableSearch(searchName)){
+            return(null);
+        }
+        List<Resource> candidates = new ArrayList<>();
+        for(Map.Entry<IdType, VirtualDBCacheEntry> currentEntry: resourceCache.entrySet()){
+            if(!isStillValidCacheResource(currentEntry.getValue())){
+                // It's about to be retired, after which the cache is incomplete anyway
+                return(null);
+            }
+            Resource currentResource = readCacheResource(currentEntry.getKey(), currentEntry.getValue());
+            if(currentResource != null){
+                candidates.add(currentResource);
+            }
+        }
+        List<Resource> matchingResources = searchEvaluator.evaluate(searchName, candidates, parameterSet);
+        return(matchingResources);
+    }
+
+    //
+    // Unknown Identifiers (Negative Cache)
+    //
+
+    /**
+     * Records that the Sources of Truth hold no Resource for the Identifier, so that subsequent lookups can be
+     * answered without asking them again (until the record retires, or a Resource with the Identifier is cached).
+     *
+     * @param identifier The Identifier that could not be resolved
+     */
+    public void recordUnknownIdentifier(Identifier identifier){
+        VirtualDBIdentifierKey identifierKey = buildIdentifierIndexKey(identifier);
+        if(unknownIdentifierCache != null && identifierKey != null){
+            getLogger().trace(".recordUnknownIdentifier(): recording unknown identifier --> {}", identifierKey);
+            unknownIdentifierCache.put(identifierKey, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @param identifier The Identifier to be checked
+     * @return True if the Identifier was recently found not to exist within the Sources of Truth
+     */
+    public boolean isUnknownIdentifier(Identifier identifier){
+        VirtualDBIdentifierKey identifierKey = buildIdentifierIndexKey(identifier);
+        if(unknownIdentifierCache == null || identifierKey == null){
+            return(false);
+        }
+        return(unknownIdentifierCache.getIfPresent(identifierKey) != null);
+    }
+
+    private void clearUnknownIdentifiers(VirtualDBCacheEntry entry){
+        if(unknownIdentifierCache == null){
+            return;
+        }
+        for(VirtualDBIdentifierKey identifierKey: entry.getIdentifierKeys()){
+            unknownIdentifierCache.invalidate(identifierKey);
+        }
+    }
+
     //
     // Public Cache Methods
     //
@@ -370,6 +1311,59 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         return(retrievedResource);
     }
 
+    /**
+     * Bulk form of getResource(IdType). Rather than building a VirtualDBMethodOutcome for each id, the Resources
+     * that are in the cache are simply returned (keyed by the id they were requested with).
+     *
+     * @param ids The ids of the Resources
+     * @return The Resources found within the cache; ids not in the cache are absent from the map
+     */
+    public Map<IdType, Resource> getResources(Collection<IdType> ids){
+        getLogger().debug(".getResources(): Entry, number of ids --> {}", ids.size());
+        Map<IdType, Resource> foundResources = new LinkedHashMap<>();
+        for(IdType currentId: ids){
+            if(currentId == null || !currentId.hasIdPart()){
+                continue;
+            }
+            Resource foundResource = lookupCacheResource(normaliseId(currentId));
+            if(foundResource != null){
+                foundResources.put(currentId, foundResource);
+            }
+        }
+        getLogger().debug(".getResources(): Exit, number found --> {}", foundResources.size());
+        return(foundResources);
+    }
+
+    /**
+     * Bulk form of syncResource(), for the Resources within a Bundle (e.g. a search result). Entries of other
+     * Resource types (such as included Resources or an OperationOutcome) are skipped. The cache's memory budget is
+     * enforced once, after all the Resources have been added, rather than once per Resource, and no per-Resource
+     * VirtualDBMethodOutcome is built.
+     *
+     * @param resourceBundle The Bundle containing the Resources to be synchronised
+     * @return The number of Resources synchronised into the cache
+     */
+    public int syncResources(Bundle resourceBundle){
+        if(resourceBundle == null || !resourceBundle.hasEntry()){
+            return(0);
+        }
+        getLogger().debug(".syncResources(): Entry, number of entries --> {}", resourceBundle.getEntry().size());
+        int syncedCount = 0;
+        for(Bundle.BundleEntryComponent currentEntry: resourceBundle.getEntry()){
+            Resource currentResource = currentEntry.getResource();
+            if(currentResource == null || !currentResource.getResourceType().toString().equals(getCacheClassName())){
+                continue;
+            }
+            addResourceToCache(currentResource, false);
+            syncedCount += 1;
+        }
+        if(syncedCount > 0 && specifyCacheBackend() != VirtualDBCacheBackendEnum.CAFFEINE){
+            enforceCacheMemoryBudget();
+        }
+        getLogger().debug(".syncResources(): Exit, number synchronised --> {}", syncedCount);
+        return(syncedCount);
+    }
+
     public VirtualDBMethodOutcome createResource(Resource resourceToAdd){
         getLogger().debug(".createResource(): resourceToAdd --> {}", resourceToAdd);
         VirtualDBMethodOutcome outcome = addResourceToCache(resourceToAdd);
@@ -384,9 +1378,44 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         return(outcome);
     }
 
+    /**
+     * Discards this cache's copy of a Resource that has been changed on another Ladon node (see
+     * VirtualDBCacheInvalidationService), so that the next read of it goes back to the Sources of Truth. The
+     * Resource may be new to this node, so the cache can no longer be assumed complete, and any cached searches of
+     * the type are discarded.
+     *
+     * @param id The id of the changed Resource, or null if it isn't known
+     * @param identifiers The Identifiers of the changed Resource
+     */
+    public void invalidateResource(IdType id, List<Identifier> identifiers){
+        getLogger().debug(".invalidateResource(): Entry, id --> {}", id);
+        if(id != null && id.hasIdPart()){
+            removeEntryAndIndex(normaliseId(id), null, VirtualDBCacheEvictionCauseEnum.INVALIDATED);
+        }
+        if(identifiers != null){
+            for(Identifier identifier: identifiers){
+                VirtualDBIdentifierKey identifierKey = buildIdentifierIndexKey(identifier);
+                if(identifierKey == null){
+                    continue;
+                }
+                IdType indexedId = resourceCache.resolveId(identifierKey);
+                if(indexedId != null){
+                    removeEntryAndIndex(indexedId, null, VirtualDBCacheEvictionCauseEnum.INVALIDATED);
+                }
+                if(unknownIdentifierCache != null){
+                    unknownIdentifierCache.invalidate(identifierKey);
+                }
+            }
+        }
+        markCacheIncomplete();
+        if(searchResultCache != null){
+            searchResultCache.invalidateAll();
+        }
+        getLogger().debug(".invalidateResource(): Exit");
+    }
+
     public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate){
         getLogger().debug(".updateResource(): resourceToUpdate --> {}", resourceToUpdate);
-        VirtualDBMethodOutcome deleteOutcome = deleteResourceFromCache(resourceToUpdate.getIdElement());
         VirtualDBMethodOutcome updateOutcome = addResourceToCache(resourceToUpdate);
         getLogger().debug(".updateResource(): Resource updated, outcome (VirtualDBMethodOutcome) --> {}", updateOutcome);
         return(updateOutcome);
@@ -402,19 +1431,10 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             String newID = resourceToSync.getResourceType().toString() + ":" + UUID.randomUUID().toString();
             resourceToSync.setId(newID);
         }
-        IdType resourceId = resourceToSync.getIdElement();
-        if(resourceCacheById.containsKey(resourceId)){
-            Object lockObject = resourceCacheLockSet.get(resourceId);
-            if(lockObject == null){
-                lockObject = new Object();
-                resourceCacheLockSet.put(resourceToSync.getIdElement(), lockObject);
-            }
-            CacheResourceEntry cacheEntry = resourceCacheById.get(resourceId);
-            Resource cacheResource = cacheEntry.getResource();
-            synchronized(lockObject) {
-                deleteResourceFromCache(resourceId);
-                addResourceToCache(resourceToSync);
-            }
+        IdType resourceId = normaliseId(resourceToSync.getIdElement());
+        if(resourceCache.containsId(resourceId)){
+            // Atomically replaces the entry, unless its content is unchanged (in which case it is just refreshed)
+            addResourceToCache(resourceToSync);
             VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
             outcome.setCreated(false);
             outcome.setCausalAction(VirtualDBActionTypeEnum.SYNC);
@@ -444,14 +1464,39 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         }
     }
 
-    public Object getResourceLock(IdType resourceId){
-        if(resourceCacheLockSet.containsKey(resourceId)){
-            return(resourceCacheLockSet.get(resourceId));
-        } else {
-            Object newLock = new Object();
-            resourceCacheLockSet.put(resourceId,newLock);
-            return(newLock);
+    /**
+     * Checks whether the cache already holds exactly this Resource - the same content digest and the same meta
+     * element (tags, security labels, profiles, versionId, lastUpdated) - for the Resource's id, so that callers can
+     * skip writing an unchanged Resource to the Source of Truth or persistence layers. A meta-only change is a
+     * change.
+     *
+     * @param resource The Resource to be checked
+     * @return True if the cache holds a current entry with the same content digest and meta
+     */
+    public boolean isUnchanged(Resource resource){
+        if(resource == null || !resource.hasId()){
+            return(false);
+        }
+        IdType resourceId = normaliseId(resource.getIdElement());
+        VirtualDBCacheEntry resourceEntry = resourceCache.get(resourceId);
+        if(resourceEntry == null || resourceEntry.getContentDigest() == null || !isStillValidCacheResource(resourceEntry)){
+            return(false);
+        }
+        byte[] contentDigest = resourceCodec.computeContentDigest(resource);
+        if(!VirtualDBCacheResourceCodec.isSameContent(resourceEntry.getContentDigest(), contentDigest)){
+            return(false);
         }
+        return(VirtualDBCacheResourceCodec.isSameMeta(resourceEntry.getMeta(), resource.hasMeta() ? resource.getMeta() : null));
+    }
+
+    /**
+     * @param resourceId The id of the Resource
+     * @return The lock object guarding the Resource (shared with other Resources on the same stripe, so it must
+     * only be held for short, non-blocking sections)
+     */
+    public Object getResourceLock(IdType resourceId){
+        resourceId = normaliseId(resourceId);
+        return(resourceLockTable.getLock(resourceId));
     }
 
     public Resource startResourceAttributeUpdate(Resource resourceToModify){
@@ -22,7 +22,6 @@
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
 
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
@@ -31,23 +30,27 @@ import org.slf4j.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.time.Instant;
-import java.util.Enumeration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public abstract class VirtualDBIdentifierBasedCacheBase {
+public abstract class VirtualDBIdentifierBasedCacheBase implements VirtualDBCacheExpiryTarget<IdType> {
 
     @Inject
     private VirtualDBKeyManagement virtualDBKeyManagement;
 
-    private ConcurrentHashMap<Identifier, CacheResourceEntry> resourceCacheByBusinessKey;
-    private ConcurrentHashMap<String, Object> resourceCacheLockSet;
+    @Inject
+    private VirtualDBCacheExpiryService expiryService;
+
+    private VirtualDBMultiKeyCache resourceCache;
+    private VirtualDBCacheLockTable resourceLockTable;
     boolean isInitialised;
 
     protected VirtualDBIdentifierBasedCacheBase() {
-        resourceCacheByBusinessKey = new ConcurrentHashMap<>();
-        resourceCacheLockSet = new ConcurrentHashMap<>();
+        resourceCache = new VirtualDBMultiKeyCache();
+        resourceLockTable = new VirtualDBCacheLockTable();
         this.isInitialised = false;
     }
 
@@ -68,9 +71,10 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
     }
 
     /**
-     * The function adds a Resource to the Resource Cache. It wraps the Resource in a CacheResourceEntry,
+     * The function adds a Resource to the Resource Cache. It wraps the Resource in a VirtualDBCacheEntry,
      * which enables the cache management functions to ascertain the age of the cache entry for clean-up
-     * purposes.
+     * purposes. The entry is held once, and indexed under each of the Resource's Identifiers, so finding an
+     * existing entry for the Resource costs one lookup per Identifier (rather than a scan of the cache).
      *
      * @param identifier A FHIR::Identifier that has a use of either "OFFICIAL" or "USUAL".
      * @param resourceToAdd A FHIR::Resource that is to be added to the Cache.
@@ -78,10 +82,6 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
      * addition to the Cache.
      */
     private VirtualDBMethodOutcome addResourceToCache(Identifier identifier, Resource resourceToAdd){
-        // Perform house-keeping on the Cache
-        purgeResourcesFromCache();
-        // House-keeping done
-
         getLogger().debug(".addResourceToCache(): Entry, identifier (Identifier) --> {}, resourceToAdd (Resource) --> {}", identifier, resourceToAdd);
         if(identifier == null) {
             getLogger().error(".addResourceToCache(): identifier (Identifier) is null, failing out");
@@ -107,75 +107,65 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
         if(!alreadyContainsIdentifier){
             addIdentifierToResource(identifier, resourceToAdd);
         }
-        if(resourceCacheByBusinessKey.containsKey(identifier)){
-            CacheResourceEntry resourceEntry = resourceCacheByBusinessKey.get(identifier);
-            if(resourceEntry != null){
-                Resource existingResource = resourceEntry.getResource();
-                if(areTheSame(existingResource, resourceToAdd)){
-                    VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
-                    vdbOutcome.setId(existingResource.getIdElement());
-                    vdbOutcome.setCreated(false);
-                    vdbOutcome.setResource(existingResource);
-                    vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.CREATE);
-                    vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED);
-                    OperationOutcome opOutcome = new OperationOutcome();
-                    opOutcome.setId(existingResource.getIdElement());
-                    OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
-                    newOutcomeComponent.setCode(OperationOutcome.IssueType.INFORMATIONAL);
-                    newOutcomeComponent.setSeverity(OperationOutcome.IssueSeverity.INFORMATION);
-                    CodeableConcept details = new CodeableConcept();
-                    Coding detailsCoding = new Coding();
-                    detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
-                    detailsCoding.setCode("MSG_CREATED");
-                    detailsCoding.setDisplay("New Resource Created");
-                    details.setText("New Resource Created");
-                    details.addCoding(detailsCoding);
-                    newOutcomeComponent.setDiagnostics(getCacheClassName()+"::addResourceToCache()");
-                    newOutcomeComponent.setDetails(details);
-                    opOutcome.addIssue(newOutcomeComponent);
-                    vdbOutcome.setOperationOutcome(opOutcome);
-                    return(vdbOutcome);
-                }
-            }
+        VirtualDBIdentifierKey identifierKey = VirtualDBIdentifierKey.fromIdentifier(identifier);
+        VirtualDBCacheEntry resourceEntry = resourceCache.getByIdentifierKey(identifierKey);
+        if(resourceEntry == null){
+            // The Resource may already be cached under one of its other Identifiers
+            resourceEntry = findCacheEntry(resourceToAdd);
+        }
+        if(resourceEntry != null && !isStillValidCacheResource(resourceEntry)){
+            expireCacheEntry(resolveCacheId(resourceEntry.getResource()), resourceEntry);
+            resourceEntry = null;
         }
         boolean alreadyExists = false;
-        Identifier existingKey = null;
-        for(Identifier currentIdentifier: resourceCacheByBusinessKey.keySet()){
-            CacheResourceEntry currentResourceEntry = resourceCacheByBusinessKey.get(currentIdentifier);
-            if(currentResourceEntry != null){
-                Resource currentResource = currentResourceEntry.getResource();
-                for(Identifier currentResourceIdentifier: resolveIdentifierSet(currentResource)){
-                    for(Identifier resourceToAddIdentifier: resolveIdentifierSet(resourceToAdd)){
-                        if(currentIdentifier.equalsShallow(resourceToAddIdentifier)){
-                            alreadyExists = true;
-                            existingKey = currentIdentifier;
-                            break;
-                        }
-                    }
-                }
-                if(alreadyExists){
-                    break;
-                }
-            }
-            if (alreadyExists) {
-                break;
+        if(resourceEntry != null){
+            Resource existingResource = resourceEntry.getResource();
+            if(areTheSame(existingResource, resourceToAdd)){
+                VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
+                vdbOutcome.setId(existingResource.getIdElement());
+                vdbOutcome.setCreated(false);
+                vdbOutcome.setResource(existingResource);
+                vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.CREATE);
+                vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED);
+                OperationOutcome opOutcome = new OperationOutcome();
+                opOutcome.setId(existingResource.getIdElement());
+                OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
+                newOutcomeComponent.setCode(OperationOutcome.IssueType.INFORMATIONAL);
+                newOutcomeComponent.setSeverity(OperationOutcome.IssueSeverity.INFORMATION);
+                CodeableConcept details = new CodeableConcept();
+                Coding detailsCoding = new Coding();
+                detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
+                detailsCoding.setCode("MSG_CREATED");
+                detailsCoding.setDisplay("New Resource Created");
+                details.setText("New Resource Created");
+                details.addCoding(detailsCoding);
+                newOutcomeComponent.setDiagnostics(getCacheClassName()+"::addResourceToCache()");
+                newOutcomeComponent.setDetails(details);
+                opOutcome.addIssue(newOutcomeComponent);
+                vdbOutcome.setOperationOutcome(opOutcome);
+                return(vdbOutcome);
             }
+            alreadyExists = true;
         }
         VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
         OperationOutcome opOutcome = new OperationOutcome();
         if(alreadyExists){
-            CacheResourceEntry existingResourceEntry = resourceCacheByBusinessKey.get(existingKey);
-            resourceCacheByBusinessKey.put(identifier, existingResourceEntry);
-            Resource existingResource = existingResourceEntry.getResource();
+            Resource existingResource = resourceEntry.getResource();
+            if(identifierKey != null && !resourceEntry.getIdentifierKeys().contains(identifierKey)){
+                List<VirtualDBIdentifierKey> aliasedIdentifierKeys = new ArrayList<>(resourceEntry.getIdentifierKeys());
+                aliasedIdentifierKeys.add(identifierKey);
+                reindexCacheEntry(resolveCacheId(existingResource), resourceEntry, aliasedIdentifierKeys);
+            }
             vdbOutcome.setResource(existingResource);
             vdbOutcome.setId(existingResource.getIdElement());
             opOutcome.setId(existingResource.getIdElement());
             vdbOutcome.setCreated(false);
             vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED);
         } else {
-            CacheResourceEntry cacheEntry = new CacheResourceEntry(resourceToAdd);
-            resourceCacheByBusinessKey.put(identifier, cacheEntry);
-            resourceCacheLockSet.put(resourceToAdd.getId(), new Object());
+            IdType cacheId = resolveCacheId(resourceToAdd);
+            VirtualDBCacheEntry cacheEntry = createCacheEntry(resourceToAdd);
+            resourceCache.put(cacheId, cacheEntry);
+            expiryService.scheduleExpiry(this, cacheId, cacheEntry);
             vdbOutcome.setId(resourceToAdd.getIdElement());
             vdbOutcome.setResource(resourceToAdd);
             opOutcome.setId(resourceToAdd.getIdElement());
@@ -209,47 +199,33 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
      * @return A VirtualDBMethodOutcome instance detailing the success (or otherwise) of the Resource removal activity.
      */
     private VirtualDBMethodOutcome deleteResourceFromCache(Identifier identifier, Resource resourceToRemove){
-        // Perform house-keeping on the Cache
-        purgeResourcesFromCache();
-        // House-keeping done
-
         if(identifier == null){
             getLogger().error(".deleteResourceFromCache(): identifier (Identifier) is null, failing out");
             VirtualDBMethodOutcome vdbOutcome = generateBadAttributeOutcome("deleteResourceFromCache", VirtualDBActionTypeEnum.DELETE, VirtualDBActionStatusEnum.DELETE_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return(vdbOutcome);
         }
-        CacheResourceEntry resourceEntry = resourceCacheByBusinessKey.get(identifier);
         IdType deleteId = null;
+        VirtualDBCacheEntry resourceEntry = resourceCache.getByIdentifierKey(VirtualDBIdentifierKey.fromIdentifier(identifier));
         if(resourceEntry != null){
-            deleteId = resourceEntry.getResource().getIdElement();
-            resourceCacheByBusinessKey.remove(identifier);
-            resourceCacheLockSet.remove(identifier);
+            Resource cacheResource = resourceEntry.getResource();
+            deleteId = cacheResource.getIdElement();
+            resourceCache.remove(resolveCacheId(cacheResource), resourceEntry);
         }
-        Resource cacheResource = resourceEntry.getResource();
-        if(!areTheSame(resourceToRemove, cacheResource)){
-            for(Identifier currentIdentifier: resourceCacheByBusinessKey.keySet()){
-                CacheResourceEntry currentResourceEntry = resourceCacheByBusinessKey.get(currentIdentifier);
-                if(currentResourceEntry != null){
-                    Resource currentResource = currentResourceEntry.getResource();
-                    if(areTheSame(currentResource, cacheResource)){
-                        resourceCacheByBusinessKey.remove(currentIdentifier);
-                        resourceCacheLockSet.remove(currentIdentifier);
-                        if(deleteId == null){
-                            deleteId = cacheResource.getIdElement();
-                        }
-                    }
+        // Remove any other entry the Resource is cached under - by its own id, or by any of its other Identifiers
+        if(resourceToRemove != null){
+            if(resourceToRemove.hasIdElement() && resourceToRemove.getIdElement().hasIdPart()){
+                VirtualDBCacheEntry removedEntry = resourceCache.remove(resolveCacheId(resourceToRemove), null);
+                if(removedEntry != null && deleteId == null){
+                    deleteId = resourceToRemove.getIdElement();
                 }
             }
-        }
-        for(Identifier currentIdentifier: resourceCacheByBusinessKey.keySet()){
-            CacheResourceEntry currentResourceEntry = resourceCacheByBusinessKey.get(currentIdentifier);
-            if(currentResourceEntry != null){
-                Resource currentResource = currentResourceEntry.getResource();
-                if(areTheSame(currentResource, resourceToRemove)){
-                    resourceCacheByBusinessKey.remove(currentIdentifier);
-                    resourceCacheLockSet.remove(currentIdentifier);
+            for(Identifier currentIdentifier: resolveIdentifierSet(resourceToRemove)){
+                VirtualDBCacheEntry currentResourceEntry = resourceCache.getByIdentifierKey(VirtualDBIdentifierKey.fromIdentifier(currentIdentifier));
+                if(currentResourceEntry != null){
+                    Resource currentResource = currentResourceEntry.getResource();
+                    resourceCache.remove(resolveCacheId(currentResource), currentResourceEntry);
                     if(deleteId == null){
-                        deleteId = cacheResource.getIdElement();
+                        deleteId = currentResource.getIdElement();
                     }
                 }
             }
@@ -295,14 +271,14 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = generateBadAttributeOutcome("getResourceFromCache", VirtualDBActionTypeEnum.REVIEW, VirtualDBActionStatusEnum.REVIEW_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return(vdbOutcome);
         }
-        CacheResourceEntry retrievedResourceEntry = resourceCacheByBusinessKey.get(identifier);
+        VirtualDBCacheEntry retrievedResourceEntry = resourceCache.getByIdentifierKey(VirtualDBIdentifierKey.fromIdentifier(identifier));
         boolean noResource = false;
         if(retrievedResourceEntry == null){
             noResource = true;
         }
         // Check to see if the retrieved Resource has expired
-        if(!isStillValidCacheResource(retrievedResourceEntry)){
-            purgeResourcesFromCache();
+        if(!noResource && !isStillValidCacheResource(retrievedResourceEntry)){
+            expireCacheEntry(resolveCacheId(retrievedResourceEntry.getResource()), retrievedResourceEntry);
             noResource = true;
         }
         // Check to see if there is an actual resource in the resource entry!
@@ -366,35 +342,47 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
     /**
      * This is a helper method, and is not intended for use outside of finding Resources
      * @return A collection of ALL the Resources within the Cache
+     * @deprecated Copies the whole cache on each call; use streamResources() instead
      */
+    @Deprecated
     public Collection<Resource> getAllResourcesFromCache(){
         getLogger().debug(".getAllResourcesFromCache(): Entry");
-        ArrayList<Resource> resourceSet = new ArrayList<>();
-        for(CacheResourceEntry resourceEntry: resourceCacheByBusinessKey.values() ){
-            resourceSet.add(resourceEntry.getResource());
-        }
+        List<Resource> resourceSet = streamResources(null, false).collect(Collectors.toList());
         getLogger().debug(".getAllResourcesFromCache(): Exit");
         return(resourceSet);
     }
 
     /**
-     * The method is called after every add/remove to clear Resources from the cache that have expired. It's not an
-     * ideal solution but will keep the cache to a manageable size during the first few releases.
+     * Scans the (unexpired) Resources within the cache, without first copying them. The scan is weakly
+     * consistent with changes made while it runs, and (with parallel set) is split across the common ForkJoinPool.
      *
-     * TODO Need to improve the efficiency and mechanism used to clear content from the cache.
+     * @param filter Applied to each Resource within the scan (null for all Resources)
+     * @param parallel Whether the returned Stream is parallel
+     * @return A Stream of the Resources that pass the filter
      */
-    private void purgeResourcesFromCache(){
-        getLogger().debug(".purgeResourcesFromCache(): Entry");
-        Enumeration<Identifier> identifierEnumeration = resourceCacheByBusinessKey.keys();
-        while(identifierEnumeration.hasMoreElements()){
-            Identifier identifier = identifierEnumeration.nextElement();
-            CacheResourceEntry resourceEntry = resourceCacheByBusinessKey.get(identifier);
-            if(!isStillValidCacheResource(resourceEntry)){
-                getLogger().trace(".purgeResourcesFromCache(): deleting resource --> {}", identifier);
-                deleteResourceFromCache(identifier, resourceEntry.getResource());
-            }
+    public Stream<Resource> streamResources(Predicate<Resource> filter, boolean parallel){
+        Stream<Resource> resourceStream = StreamSupport.stream(resourceCache.values().spliterator(), parallel)
+                .filter(this::isStillValidCacheResource)
+                .map(VirtualDBCacheEntry::getResource)
+                .filter(Objects::nonNull);
+        if(filter != null){
+            resourceStream = resourceStream.filter(filter);
+        }
+        return(resourceStream);
+    }
+
+    /**
+     * Called by the VirtualDBCacheExpiryService once an entry has reached its expiry time. The entry is only
+     * removed (along with its Identifier index entries) if it is still the one held against the id.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param expiredEntry The entry that has expired
+     */
+    @Override
+    public void expireCacheEntry(IdType id, VirtualDBCacheEntry expiredEntry){
+        if(resourceCache.remove(id, expiredEntry) != null){
+            getLogger().trace(".expireCacheEntry(): retiring resource --> {}", id);
         }
-        getLogger().debug(".purgeResourcesFromCache(): Exit");
     }
 
     //
@@ -425,21 +413,86 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
     }
 
     /**
-     * This method does a simple comparison between the age of the resource entry in the cache and the
-     * age-threshold and returns true if the resource is still "young enough".
+     * Wraps the Resource in a new VirtualDBCacheEntry, stamping it with the current (coarse) time and an expiry
+     * time based on the cache's retirement age, and capturing the Identifier keys it is to be indexed under.
+     *
+     * @param resource The Resource to be cached
+     * @return A new VirtualDBCacheEntry for the Resource
+     */
+    private VirtualDBCacheEntry createCacheEntry(Resource resource){
+        long currentTime = expiryService.getCoarseTime();
+        long ageThreshold = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
+        VirtualDBCacheResourceHolder resourceHolder = new VirtualDBCacheObjectResourceHolder(resource);
+        VirtualDBCacheEntry newEntry = new VirtualDBCacheEntry(resourceHolder, currentTime, currentTime + ageThreshold, 0, resolveIdentifierKeys(resource), null);
+        return(newEntry);
+    }
+
+    /**
+     * Replaces a cache entry with one holding the same Resource (and expiry) but indexed under the given Identifier
+     * keys, re-scheduling its expiry against the replacement.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param cacheEntry The entry currently held against the id
+     * @param identifierKeys The Identifier keys the entry is to be indexed under
+     */
+    private void reindexCacheEntry(IdType id, VirtualDBCacheEntry cacheEntry, List<VirtualDBIdentifierKey> identifierKeys){
+        VirtualDBCacheEntry reindexedEntry = new VirtualDBCacheEntry(cacheEntry.getResourceHolder(), cacheEntry.getEntryTime(), cacheEntry.getExpiryTime(), cacheEntry.getWeight(), identifierKeys, cacheEntry.getContentDigest());
+        resourceCache.put(id, reindexedEntry);
+        expiryService.scheduleExpiry(this, id, reindexedEntry);
+    }
+
+    /**
+     * @param resource The Resource
+     * @return The (de-duplicated) Identifier keys for the Resource's Identifiers
+     */
+    private List<VirtualDBIdentifierKey> resolveIdentifierKeys(Resource resource){
+        List<VirtualDBIdentifierKey> identifierKeys = new ArrayList<>();
+        for(Identifier currentIdentifier: resolveIdentifierSet(resource)){
+            VirtualDBIdentifierKey identifierKey = VirtualDBIdentifierKey.fromIdentifier(currentIdentifier);
+            if(identifierKey != null && !identifierKeys.contains(identifierKey)){
+                identifierKeys.add(identifierKey);
+            }
+        }
+        return(identifierKeys);
+    }
+
+    /**
+     * Finds the cache entry for a Resource using any of its Identifiers.
+     *
+     * @param resource The Resource
+     * @return The cache entry indexed under the first of the Resource's Identifiers that has one, or null
+     */
+    private VirtualDBCacheEntry findCacheEntry(Resource resource){
+        for(Identifier currentIdentifier: resolveIdentifierSet(resource)){
+            VirtualDBCacheEntry currentEntry = resourceCache.getByIdentifierKey(VirtualDBIdentifierKey.fromIdentifier(currentIdentifier));
+            if(currentEntry != null){
+                return(currentEntry);
+            }
+        }
+        return(null);
+    }
+
+    /**
+     * @param resource The Resource
+     * @return The (IdType) key the Resource is cached under - its type and (unversioned) id part
+     */
+    private IdType resolveCacheId(Resource resource){
+        IdType cacheId = new IdType(resource.getResourceType().toString(), resource.getIdElement().getIdPart());
+        return(cacheId);
+    }
+
+    /**
+     * This method checks the cache entry against the (coarse) current time and returns true if the resource
+     * is still "young enough".
      *
      * @param testEntry The Cache Entry to be tested to see if it shouldn't be flushed.
      * @return True if the Cache Entry is still valid, false if it should be flushed.
      */
-
-    private boolean isStillValidCacheResource(CacheResourceEntry testEntry){
-        Long resourceEntryAge = Date.from(Instant.now()).getTime() - testEntry.getTouchDate().getTime();
-        Long ageThreshold = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
-        if(resourceEntryAge > ageThreshold){
+    private boolean isStillValidCacheResource(VirtualDBCacheEntry testEntry){
+        if(testEntry == null){
             return(false);
-        } else {
-            return(true);
         }
+        return(!testEntry.hasExpired(expiryService.getCoarseTime()));
     }
 
     /**
@@ -508,24 +561,21 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
             String newID = resourceToSync.getResourceType().toString() + ":" + UUID.randomUUID().toString();
             resourceToSync.setId(newID);
         }
-        if(resourceCacheByBusinessKey.containsKey(bestIdentifier)){
-            Object lockObject = resourceCacheLockSet.get(bestIdentifier);
-            if(lockObject == null){
-                lockObject = new Object();
-                resourceCacheLockSet.put(resourceToSync.getId(), lockObject);
-            }
-            CacheResourceEntry cacheEntry = resourceCacheByBusinessKey.get(bestIdentifier);
-            if(cacheEntry == null){
-                VirtualDBMethodOutcome vdbOutcome = generateBadAttributeOutcome("syncResource", VirtualDBActionTypeEnum.SYNC, VirtualDBActionStatusEnum.SYNC_FAILURE, "Parameter identifier (Identifier) content is invalid");
-                return(vdbOutcome);
-            }
+        VirtualDBCacheEntry cacheEntry = findCacheEntry(resourceToSync);
+        if(cacheEntry != null){
             Resource cacheResource = cacheEntry.getResource();
             if(cacheResource == null){
                 VirtualDBMethodOutcome vdbOutcome = generateBadAttributeOutcome("syncResource", VirtualDBActionTypeEnum.SYNC, VirtualDBActionStatusEnum.SYNC_FAILURE, "Parameter identifier (Identifier) content is invalid");
                 return(vdbOutcome);
             }
-            synchronized(lockObject) {
+            IdType cacheId = resolveCacheId(cacheResource);
+            synchronized(resourceLockTable.getLock(cacheId)) {
                 synchroniseResource(cacheResource, resourceToSync);
+                // The synchronised Resource may carry Identifiers the entry isn't yet indexed under
+                List<VirtualDBIdentifierKey> identifierKeys = resolveIdentifierKeys(cacheResource);
+                if(!identifierKeys.equals(cacheEntry.getIdentifierKeys())){
+                    reindexCacheEntry(cacheId, cacheEntry, identifierKeys);
+                }
             }
             VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
             outcome.setCreated(false);
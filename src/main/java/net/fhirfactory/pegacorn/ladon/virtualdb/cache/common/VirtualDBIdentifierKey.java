@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.Identifier;
+
+/**
+ * An immutable, value-based key for a business Identifier, as used by the cache indexes. HAPI's Identifier uses
+ * identity equality, so can't be used as a map key directly; this key captures the normalised (trimmed) system and
+ * value, with the system interned (there are only ever a handful of distinct systems, so each is held once no
+ * matter how many keys use it) and the hash computed once at construction.
+ */
+public final class VirtualDBIdentifierKey {
+    private static final String NO_SYSTEM = "";
+
+    private final String system;
+    private final String value;
+    private final int hash;
+
+    public VirtualDBIdentifierKey(String system, String value){
+        if(system == null){
+            this.system = NO_SYSTEM;
+        } else {
+            this.system = system.trim().intern();
+        }
+        this.value = value.trim();
+        this.hash = 31 * this.system.hashCode() + this.value.hashCode();
+    }
+
+    /**
+     * Builds the key for an Identifier.
+     *
+     * @param identifier The Identifier to build the key for
+     * @return The key, or null if the Identifier has no value (and so can't be indexed)
+     */
+    public static VirtualDBIdentifierKey fromIdentifier(Identifier identifier){
+        if(identifier == null){
+            return(null);
+        }
+        if(!identifier.hasValue()){
+            return(null);
+        }
+        String system = null;
+        if(identifier.hasSystem()){
+            system = identifier.getSystem();
+        }
+        VirtualDBIdentifierKey key = new VirtualDBIdentifierKey(system, identifier.getValue());
+        return(key);
+    }
+
+    public String getSystem() {
+        return system;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(this == other){
+            return(true);
+        }
+        if(!(other instanceof VirtualDBIdentifierKey)){
+            return(false);
+        }
+        VirtualDBIdentifierKey otherKey = (VirtualDBIdentifierKey)other;
+        // Systems are interned, so can be compared by reference
+        return(hash == otherKey.hash && system == otherKey.system && value.equals(otherKey.value));
+    }
+
+    @Override
+    public int hashCode(){
+        return(hash);
+    }
+
+    @Override
+    public String toString(){
+        return(system + "|" + value);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A VirtualDBCacheInvalidationTransport whose channel is held within the JVM, and so only reaches nodes running in
+ * the same JVM - typically a set of VirtualDBCacheInvalidationServices standing in for separate Ladon nodes within
+ * a test. Messages are delivered synchronously, on the publishing thread, with each subscriber given its own copy
+ * (as a subscriber on a separate node would be) so that none can alter what the others receive.
+ *
+ * Transports created with the default constructor share a single channel; pass a channel to the constructor to
+ * keep a group of transports isolated from all others.
+ */
+public class VirtualDBInJVMCacheInvalidationTransport implements VirtualDBCacheInvalidationTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBInJVMCacheInvalidationTransport.class);
+
+    private static final List<Consumer<VirtualDBCacheInvalidationMessage>> DEFAULT_CHANNEL = new CopyOnWriteArrayList<>();
+
+    private List<Consumer<VirtualDBCacheInvalidationMessage>> channel;
+
+    public VirtualDBInJVMCacheInvalidationTransport(){
+        this.channel = DEFAULT_CHANNEL;
+    }
+
+    public VirtualDBInJVMCacheInvalidationTransport(List<Consumer<VirtualDBCacheInvalidationMessage>> channel){
+        this.channel = channel;
+    }
+
+    /**
+     * @return A new, empty channel for use with the VirtualDBInJVMCacheInvalidationTransport(channel) constructor
+     */
+    public static List<Consumer<VirtualDBCacheInvalidationMessage>> newChannel(){
+        return(new CopyOnWriteArrayList<>());
+    }
+
+    @Override
+    public void publish(VirtualDBCacheInvalidationMessage message) {
+        for(Consumer<VirtualDBCacheInvalidationMessage> subscriber: channel){
+            try {
+                subscriber.accept(message.copy());
+            } catch (Exception ex) {
+                LOG.warn(".publish(): Subscriber failed to process invalidation --> {}, error --> {}", message, ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<VirtualDBCacheInvalidationMessage> subscriber) {
+        if(subscriber != null && !channel.contains(subscriber)){
+            channel.add(subscriber);
+        }
+    }
+
+    @Override
+    public void unsubscribe(Consumer<VirtualDBCacheInvalidationMessage> subscriber) {
+        channel.remove(subscriber);
+    }
+}
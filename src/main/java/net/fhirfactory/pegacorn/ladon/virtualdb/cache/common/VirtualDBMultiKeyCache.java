@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.IdType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache structure that holds each entry once, under its (IdType) id, and indexes it under all of its business
+ * Identifiers (as captured in the entry's VirtualDBIdentifierKeys). Insert, delete and lookup - by id or by any one
+ * Identifier - are O(number of Identifiers on the entry), regardless of the number of entries held.
+ *
+ * Entries are also (reverse) indexed by the ids of the Resources they reference, so that all the cached Resources
+ * referencing a given Resource can be found without a scan.
+ *
+ * Index maintenance is performed within the id map's compute() for the entry, so concurrent writers of the same
+ * id can't interleave their index changes. The id map itself may be supplied (e.g. a Caffeine cache's map view),
+ * in which case the owner must call onEntryEvicted() for any entry the map removes of its own accord.
+ */
+public class VirtualDBMultiKeyCache {
+    private ConcurrentMap<IdType, VirtualDBCacheEntry> entriesById;
+    private ConcurrentHashMap<VirtualDBIdentifierKey, IdType> idsByIdentifierKey;
+    private ConcurrentHashMap<IdType, Set<IdType>> referencingIdsByReferencedId;
+
+    public VirtualDBMultiKeyCache(){
+        this(new ConcurrentHashMap<>());
+    }
+
+    public VirtualDBMultiKeyCache(ConcurrentMap<IdType, VirtualDBCacheEntry> entriesById){
+        this.entriesById = entriesById;
+        this.idsByIdentifierKey = new ConcurrentHashMap<>();
+        this.referencingIdsByReferencedId = new ConcurrentHashMap<>();
+    }
+
+    public VirtualDBCacheEntry get(IdType id){
+        return(entriesById.get(id));
+    }
+
+    public boolean containsId(IdType id){
+        return(entriesById.containsKey(id));
+    }
+
+    /**
+     * @param identifierKey An Identifier key
+     * @return The id of the entry indexed under the key, or null if there isn't one. Note the entry may have been
+     * replaced (without the Identifier) since, so the caller should check the entry still carries the key.
+     */
+    public IdType resolveId(VirtualDBIdentifierKey identifierKey){
+        if(identifierKey == null){
+            return(null);
+        }
+        return(idsByIdentifierKey.get(identifierKey));
+    }
+
+    /**
+     * @param identifierKey An Identifier key
+     * @return The entry indexed under the key, or null if there isn't one
+     */
+    public VirtualDBCacheEntry getByIdentifierKey(VirtualDBIdentifierKey identifierKey){
+        IdType indexedId = resolveId(identifierKey);
+        if(indexedId == null){
+            return(null);
+        }
+        VirtualDBCacheEntry indexedEntry = entriesById.get(indexedId);
+        if(indexedEntry == null || !indexedEntry.getIdentifierKeys().contains(identifierKey)){
+            removeStaleIdentifierKey(identifierKey, indexedId);
+            return(null);
+        }
+        return(indexedEntry);
+    }
+
+    /**
+     * Removes an index entry that no longer refers to a cached entry carrying the Identifier key.
+     *
+     * @param identifierKey The Identifier key
+     * @param indexedId The id it was indexed against
+     */
+    public void removeStaleIdentifierKey(VirtualDBIdentifierKey identifierKey, IdType indexedId){
+        idsByIdentifierKey.remove(identifierKey, indexedId);
+    }
+
+    /**
+     * @param referencedId The (normalised) id of a Resource
+     * @return The ids of the entries that reference it (checked against the current entries, so the index's
+     * eventual consistency after evictions is never visible)
+     */
+    public List<IdType> getReferencingIds(IdType referencedId){
+        List<IdType> referencingIds = new ArrayList<>();
+        if(referencedId == null){
+            return(referencingIds);
+        }
+        Set<IdType> indexedIds = referencingIdsByReferencedId.get(referencedId);
+        if(indexedIds == null){
+            return(referencingIds);
+        }
+        for(IdType indexedId: indexedIds){
+            VirtualDBCacheEntry indexedEntry = entriesById.get(indexedId);
+            if(indexedEntry != null && indexedEntry.getReferencedIds().contains(referencedId)){
+                referencingIds.add(indexedId);
+            }
+        }
+        return(referencingIds);
+    }
+
+    /**
+     * Inserts (or replaces) the entry for the given id. On a replacement, the new entry's Identifier keys are
+     * indexed before any the old entry no longer carries are removed, so readers never see a transient miss.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param newEntry The entry to be stored
+     * @return The entry that was replaced, or null if there wasn't one
+     */
+    public VirtualDBCacheEntry put(IdType id, VirtualDBCacheEntry newEntry){
+        VirtualDBCacheEntry[] replacedEntry = new VirtualDBCacheEntry[1];
+        entriesById.compute(id, (key, existingEntry) -> {
+            addIdentifierKeys(id, newEntry);
+            addReferences(id, newEntry);
+            if(existingEntry != null){
+                removeStaleIndexEntries(id, existingEntry, newEntry);
+                replacedEntry[0] = existingEntry;
+            }
+            return(newEntry);
+        });
+        return(replacedEntry[0]);
+    }
+
+    /**
+     * Re-writes an entry in place (e.g. to reset a backend's write time), without any change to the index.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param entry The entry currently held against the id
+     * @return True if the entry was still held against the id
+     */
+    public boolean touch(IdType id, VirtualDBCacheEntry entry){
+        return(entriesById.replace(id, entry, entry));
+    }
+
+    /**
+     * Removes the entry for the given id (but only if it is the expectedEntry, where one is given) along with its
+     * Identifier keys.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param expectedEntry The entry expected to be held against the id, or null to remove whatever is there
+     * @return The removed entry, or null if nothing was removed
+     */
+    public VirtualDBCacheEntry remove(IdType id, VirtualDBCacheEntry expectedEntry){
+        VirtualDBCacheEntry[] removedEntry = new VirtualDBCacheEntry[1];
+        entriesById.computeIfPresent(id, (key, existingEntry) -> {
+            if(expectedEntry != null && existingEntry != expectedEntry){
+                return(existingEntry);
+            }
+            removeIdentifierKeys(id, existingEntry);
+            removeReferences(id, existingEntry);
+            removedEntry[0] = existingEntry;
+            return(null);
+        });
+        return(removedEntry[0]);
+    }
+
+    /**
+     * Tidies up the index after an entry has been evicted by the id map itself. Eviction notifications may be
+     * delivered late, by which time the id may have been re-cached: only the index entries the evicted entry
+     * doesn't share with the current one are removed, so lookups of the live entry never see a transient miss.
+     *
+     * @param id The (IdType) key of the evicted Resource
+     * @param evictedEntry The evicted entry
+     */
+    public void onEntryEvicted(IdType id, VirtualDBCacheEntry evictedEntry){
+        VirtualDBCacheEntry currentEntry = entriesById.get(id);
+        if(currentEntry == evictedEntry){
+            // Still the live entry, so its index entries are still current
+            return;
+        }
+        removeStaleIndexEntries(id, evictedEntry, currentEntry);
+        VirtualDBCacheEntry latestEntry = entriesById.get(id);
+        if(latestEntry != null && latestEntry != currentEntry){
+            // Re-cached while the index was being tidied, so restore anything the tidy-up may have removed
+            addIdentifierKeys(id, latestEntry);
+            addReferences(id, latestEntry);
+        }
+    }
+
+    public Collection<VirtualDBCacheEntry> values(){
+        return(entriesById.values());
+    }
+
+    public Set<Map.Entry<IdType, VirtualDBCacheEntry>> entrySet(){
+        return(entriesById.entrySet());
+    }
+
+    public int size(){
+        return(entriesById.size());
+    }
+
+    private void addIdentifierKeys(IdType id, VirtualDBCacheEntry entry){
+        for(VirtualDBIdentifierKey identifierKey: entry.getIdentifierKeys()){
+            idsByIdentifierKey.put(identifierKey, id);
+        }
+    }
+
+    private void removeIdentifierKeys(IdType id, VirtualDBCacheEntry entry){
+        for(VirtualDBIdentifierKey identifierKey: entry.getIdentifierKeys()){
+            idsByIdentifierKey.remove(identifierKey, id);
+        }
+    }
+
+    /**
+     * Removes the index entries of a no-longer-held entry, other than those shared with the entry now held
+     * against the id.
+     *
+     * @param id The (IdType) key of the Resource
+     * @param staleEntry The entry no longer held
+     * @param currentEntry The entry now held against the id, or null if there isn't one
+     */
+    private void removeStaleIndexEntries(IdType id, VirtualDBCacheEntry staleEntry, VirtualDBCacheEntry currentEntry){
+        for(VirtualDBIdentifierKey identifierKey: staleEntry.getIdentifierKeys()){
+            if(currentEntry == null || !currentEntry.getIdentifierKeys().contains(identifierKey)){
+                idsByIdentifierKey.remove(identifierKey, id);
+            }
+        }
+        for(IdType referencedId: staleEntry.getReferencedIds()){
+            if(currentEntry == null || !currentEntry.getReferencedIds().contains(referencedId)){
+                removeReference(id, referencedId);
+            }
+        }
+    }
+
+    private void addReferences(IdType id, VirtualDBCacheEntry entry){
+        for(IdType referencedId: entry.getReferencedIds()){
+            // Added within compute(), so can't race with removeReference() dropping an emptied set
+            referencingIdsByReferencedId.compute(referencedId, (key, referencingIds) -> {
+                if(referencingIds == null){
+                    referencingIds = ConcurrentHashMap.newKeySet();
+                }
+                referencingIds.add(id);
+                return(referencingIds);
+            });
+        }
+    }
+
+    private void removeReferences(IdType id, VirtualDBCacheEntry entry){
+        for(IdType referencedId: entry.getReferencedIds()){
+            removeReference(id, referencedId);
+        }
+    }
+
+    private void removeReference(IdType id, IdType referencedId){
+        referencingIdsByReferencedId.computeIfPresent(referencedId, (key, referencingIds) -> {
+            referencingIds.remove(id);
+            if(referencingIds.isEmpty()){
+                return(null);
+            }
+            return(referencingIds);
+        });
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, value-based key for a search request (ResourceType, SearchNameEnum and parameter set), as used by
+ * the VirtualDBSearchResultCache. The parameter set is held in a canonical form - each criterion rendered as
+ * "name=value" and the criteria sorted and joined with "&" - so that identical searches produce equal keys
+ * regardless of the ordering (or the identity) of the Property and value objects passed in. Any "%", "=" or "&"
+ * within a name or value is percent-encoded, so that no two different parameter sets share a canonical form.
+ */
+public final class VirtualDBSearchKey {
+    private final String resourceType;
+    private final String searchName;
+    private final String criteria;
+    private final int hash;
+
+    private VirtualDBSearchKey(String resourceType, String searchName, String criteria){
+        this.resourceType = resourceType;
+        this.searchName = searchName;
+        this.criteria = criteria;
+        this.hash = 31 * (31 * resourceType.hashCode() + searchName.hashCode()) + criteria.hashCode();
+    }
+
+    /**
+     * Builds the key for a search request.
+     *
+     * @param resourceType The ResourceType being searched
+     * @param searchName The search being performed
+     * @param parameterSet The search criteria
+     * @return The key, or null if one of the criteria can't be rendered in a canonical form (and so the search's
+     * results can't be cached)
+     */
+    public static VirtualDBSearchKey fromSearch(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet){
+        if(resourceType == null || searchName == null || parameterSet == null){
+            return(null);
+        }
+        List<String> canonicalCriteria = new ArrayList<>();
+        for(Map.Entry<Property, Serializable> criterion: parameterSet.entrySet()){
+            if(criterion.getKey() == null || criterion.getKey().getName() == null){
+                return(null);
+            }
+            String canonicalValue = canonicaliseValue(criterion.getValue());
+            if(canonicalValue == null){
+                return(null);
+            }
+            canonicalCriteria.add(escape(criterion.getKey().getName()) + "=" + escape(canonicalValue));
+        }
+        Collections.sort(canonicalCriteria);
+        VirtualDBSearchKey key = new VirtualDBSearchKey(resourceType.toString(), searchName.name(), String.join("&", canonicalCriteria));
+        return(key);
+    }
+
+    private static String escape(String criterionPart){
+        return(criterionPart.replace("%", "%25").replace("=", "%3D").replace("&", "%26"));
+    }
+
+    private static String canonicaliseValue(Serializable value){
+        if(value == null){
+            return(null);
+        }
+        if(!(value instanceof Base)){
+            return(value.toString().trim());
+        }
+        Base element = (Base)value;
+        if(element.isPrimitive()){
+            return(element.primitiveValue());
+        }
+        if(element instanceof Identifier){
+            VirtualDBIdentifierKey identifierKey = VirtualDBIdentifierKey.fromIdentifier((Identifier)element);
+            if(identifierKey == null){
+                return(null);
+            }
+            return(identifierKey.toString());
+        }
+        if(element instanceof Reference){
+            return(((Reference)element).getReference());
+        }
+        if(element instanceof Coding){
+            Coding coding = (Coding)element;
+            return(coding.getSystem() + "|" + coding.getCode());
+        }
+        return(null);
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public String getSearchName() {
+        return searchName;
+    }
+
+    public String getCriteria() {
+        return criteria;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(this == other){
+            return(true);
+        }
+        if(!(other instanceof VirtualDBSearchKey)){
+            return(false);
+        }
+        VirtualDBSearchKey otherKey = (VirtualDBSearchKey)other;
+        return(hash == otherKey.hash && resourceType.equals(otherKey.resourceType) && searchName.equals(otherKey.searchName) && criteria.equals(otherKey.criteria));
+    }
+
+    @Override
+    public int hashCode(){
+        return(hash);
+    }
+
+    @Override
+    public String toString(){
+        return(resourceType + "::" + searchName + "(" + criteria + ")");
+    }
+}
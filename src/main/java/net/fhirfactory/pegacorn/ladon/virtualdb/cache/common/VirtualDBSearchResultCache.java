@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.hl7.fhir.r4.model.IdType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the results of searches of the Sources-of-Truth, so that repeated identical searches needn't be re-sent.
+ * Only the ids of the matching Resources are held (keyed by VirtualDBSearchKey) - the Resources themselves are held
+ * (and retired) by the Resource cache, and a cached result is only usable while all of them are still resident.
+ *
+ * Any create, update or delete of a Resource of the type invalidates all of the type's cached results. As a
+ * search of the Sources-of-Truth may race such a change, a result is only stored if no invalidation has happened
+ * since the search began (see beginSearch()). Changes made to the Sources-of-Truth by other routes aren't seen at
+ * all, so each result is also retired a fixed time after it is stored - a period no longer than the Resource
+ * type's retirement age.
+ */
+public class VirtualDBSearchResultCache {
+    private Cache<VirtualDBSearchKey, List<IdType>> searchResults;
+    private AtomicLong invalidationGeneration;
+    private LongAdder hitCount;
+    private LongAdder missCount;
+    private LongAdder invalidationCount;
+    private LongAdder evictionCount;
+
+    public VirtualDBSearchResultCache(long maximumSize, long retirementInSeconds){
+        this.invalidationGeneration = new AtomicLong(0);
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.invalidationCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+        this.searchResults = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(retirementInSeconds, TimeUnit.SECONDS)
+                .removalListener((VirtualDBSearchKey key, List<IdType> ids, RemovalCause cause) -> {
+                    if(cause.wasEvicted()){
+                        evictionCount.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @param key The search
+     * @return The ids of the Resources matching the search, or null if the search's results aren't cached
+     */
+    public List<IdType> getResultIds(VirtualDBSearchKey key){
+        List<IdType> resultIds = searchResults.getIfPresent(key);
+        if(resultIds == null){
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return(resultIds);
+    }
+
+    /**
+     * To be called before a search is sent to the Sources-of-Truth, with the returned token then passed to
+     * putResultIds() along with the search's results.
+     *
+     * @return A token identifying the current invalidation generation
+     */
+    public long beginSearch(){
+        return(invalidationGeneration.get());
+    }
+
+    /**
+     * Stores the results of a search - unless the cached results have been invalidated since the search began, in
+     * which case the results may already be stale.
+     *
+     * @param key The search
+     * @param resultIds The ids of the Resources matching the search
+     * @param searchToken The token returned by beginSearch() when the search began
+     */
+    public void putResultIds(VirtualDBSearchKey key, List<IdType> resultIds, long searchToken){
+        if(invalidationGeneration.get() != searchToken){
+            return;
+        }
+        searchResults.put(key, Collections.unmodifiableList(new ArrayList<>(resultIds)));
+        if(invalidationGeneration.get() != searchToken){
+            // An invalidation raced the put, so it may have missed this result
+            searchResults.invalidate(key);
+        }
+    }
+
+    /**
+     * Discards a single cached result (e.g. one referring to a Resource that is no longer in the Resource cache).
+     *
+     * @param key The search
+     */
+    public void invalidate(VirtualDBSearchKey key){
+        searchResults.invalidate(key);
+    }
+
+    /**
+     * Discards all cached results, as a Resource of the type has been created, updated or deleted.
+     */
+    public void invalidateAll(){
+        invalidationGeneration.incrementAndGet();
+        invalidationCount.increment();
+        searchResults.invalidateAll();
+    }
+
+    public long getEntryCount(){
+        return(searchResults.estimatedSize());
+    }
+
+    public long getHitCount(){
+        return(hitCount.sum());
+    }
+
+    public long getMissCount(){
+        return(missCount.sum());
+    }
+
+    public long getInvalidationCount(){
+        return(invalidationCount.sum());
+    }
+
+    public long getEvictionCount(){
+        return(evictionCount.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBSearchResultCache{" +
+                "entryCount=" + getEntryCount() +
+                ", hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", invalidationCount=" + getInvalidationCount() +
+                ", evictionCount=" + getEvictionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An optional second-level cache, shared by all the Ladon nodes of a cluster, behind each node's (local) VirtualDB
+ * Resource Caches. It is an embedded, replicated Infinispan cache: a Resource loaded from the Sources-of-Truth by
+ * one node is put here, so a miss in another node's local cache can be served from this tier rather than with
+ * another Sources-of-Truth call.
+ *
+ * Resources are held in their encoded (JSON) form, keyed by "[ResourceType]/[idPart]", and expire after the same
+ * retirement age as in the local caches.
+ *
+ * The tier is disabled unless the LADON_VIRTUALDB_SHARED_CACHE_ENABLED environment variable (or system property) is
+ * "true"; LADON_VIRTUALDB_SHARED_CACHE_CLUSTER then names the (JGroups) cluster the nodes join. Alternatively, an
+ * EmbeddedCacheManager can be passed to start() - e.g. several, built with buildCacheManager(), to run multiple
+ * embedded nodes within one JVM for testing.
+ */
+@ApplicationScoped
+public class VirtualDBSharedCacheTier {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSharedCacheTier.class);
+
+    public static final String SHARED_CACHE_ENABLED_SETTING = VirtualDBCacheSettings.SETTING_PREFIX + "SHARED_CACHE_ENABLED";
+    public static final String SHARED_CACHE_CLUSTER_SETTING = VirtualDBCacheSettings.SETTING_PREFIX + "SHARED_CACHE_CLUSTER";
+    private static final String DEFAULT_CLUSTER_NAME = "ladon-virtualdb";
+    private static final String SHARED_CACHE_NAME = "ladon-virtualdb-resources";
+    private static final long SHARED_CACHE_MAXIMUM_SIZE = 500000;
+
+    @Inject
+    private VirtualDBCacheResourceCodec resourceCodec;
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, String> sharedCache;
+    private boolean ownsCacheManager;
+
+    public VirtualDBSharedCacheTier(){
+        this.ownsCacheManager = false;
+    }
+
+    /**
+     * Creates a tier that uses the given codec, rather than the injected one - for use outside of the container
+     * (where the tier is then enabled via start()).
+     *
+     * @param resourceCodec The codec used to encode and decode the Resources held by the tier
+     */
+    VirtualDBSharedCacheTier(VirtualDBCacheResourceCodec resourceCodec){
+        this();
+        this.resourceCodec = resourceCodec;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        if(sharedCache == null && Boolean.parseBoolean(VirtualDBCacheSettings.resolveSetting(SHARED_CACHE_ENABLED_SETTING, "false"))){
+            String clusterName = VirtualDBCacheSettings.resolveSetting(SHARED_CACHE_CLUSTER_SETTING, DEFAULT_CLUSTER_NAME);
+            LOG.info(".initialise(): Starting shared cache tier, cluster --> {}", clusterName);
+            try {
+                start(buildCacheManager(clusterName));
+                this.ownsCacheManager = true;
+            } catch (Exception ex) {
+                LOG.warn(".initialise(): Could not start shared cache tier, continuing without it, error --> {}", ex.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        if(ownsCacheManager && cacheManager != null){
+            cacheManager.stop();
+        }
+        this.sharedCache = null;
+        this.cacheManager = null;
+    }
+
+    /**
+     * Builds (and starts) a clustered cache manager for a node of the shared tier. Nodes built with the same
+     * cluster name - whether in separate JVMs or the same one - form a single cluster.
+     *
+     * @param clusterName The name of the cluster to join
+     * @return The node's cache manager
+     */
+    public static EmbeddedCacheManager buildCacheManager(String clusterName){
+        GlobalConfigurationBuilder globalConfiguration = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        globalConfiguration.transport().clusterName(clusterName);
+        ConfigurationBuilder cacheConfiguration = new ConfigurationBuilder();
+        cacheConfiguration.clustering().cacheMode(CacheMode.REPL_SYNC);
+        cacheConfiguration.memory().maxCount(SHARED_CACHE_MAXIMUM_SIZE);
+        DefaultCacheManager newCacheManager = new DefaultCacheManager(globalConfiguration.build());
+        newCacheManager.defineConfiguration(SHARED_CACHE_NAME, cacheConfiguration.build());
+        return(newCacheManager);
+    }
+
+    /**
+     * Enables the tier using the given cache manager (which remains owned by the caller, so isn't stopped when
+     * this tier is shut down).
+     *
+     * @param newCacheManager A cache manager built with buildCacheManager()
+     */
+    public void start(EmbeddedCacheManager newCacheManager){
+        this.cacheManager = newCacheManager;
+        this.sharedCache = newCacheManager.getCache(SHARED_CACHE_NAME);
+    }
+
+    public boolean isEnabled(){
+        return(sharedCache != null);
+    }
+
+    private String buildKey(String resourceType, IdType id){
+        return(resourceType + "/" + id.getIdPart());
+    }
+
+    /**
+     * @param resourceType The type of the Resource
+     * @param id The id of the Resource
+     * @return The Resource, or null if the tier is disabled or doesn't hold it
+     */
+    public Resource getResource(String resourceType, IdType id){
+        Cache<String, String> currentCache = sharedCache;
+        if(currentCache == null || id == null || !id.hasIdPart()){
+            return(null);
+        }
+        try {
+            String encodedResource = currentCache.get(buildKey(resourceType, id));
+            if(encodedResource == null){
+                return(null);
+            }
+            return(resourceCodec.decodeFromString(encodedResource));
+        } catch (Exception ex) {
+            LOG.debug(".getResource(): Shared cache tier read failed, id --> {}, error --> {}", id, ex.getMessage());
+            return(null);
+        }
+    }
+
+    /**
+     * Adds (or replaces) a Resource in the tier. The tier is only an optimisation, so a failure is logged and
+     * otherwise ignored.
+     *
+     * @param resource The Resource (which must have an id)
+     * @param retirementInSeconds How long the tier is to hold the Resource
+     */
+    public void putResource(Resource resource, long retirementInSeconds){
+        Cache<String, String> currentCache = sharedCache;
+        if(currentCache == null || resource == null || !resource.getIdElement().hasIdPart()){
+            return;
+        }
+        try {
+            String key = buildKey(resource.getResourceType().toString(), resource.getIdElement());
+            currentCache.put(key, resourceCodec.encodeToString(resource), retirementInSeconds, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            LOG.debug(".putResource(): Shared cache tier write failed, id --> {}, error --> {}", resource.getIdElement(), ex.getMessage());
+        }
+    }
+
+    /**
+     * @param resourceType The type of the Resource
+     * @param id The id of the Resource to be removed from the tier
+     */
+    public void removeResource(String resourceType, IdType id){
+        Cache<String, String> currentCache = sharedCache;
+        if(currentCache == null || id == null || !id.hasIdPart()){
+            return;
+        }
+        try {
+            currentCache.remove(buildKey(resourceType, id));
+        } catch (Exception ex) {
+            LOG.debug(".removeResource(): Shared cache tier remove failed, id --> {}, error --> {}", id, ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of Resources held by the tier (on this node), or 0 if it is disabled
+     */
+    public long getEntryCount(){
+        Cache<String, String> currentCache = sharedCache;
+        if(currentCache == null){
+            return(0);
+        }
+        return(currentCache.size());
+    }
+}
@@ -24,25 +24,53 @@ package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common.ResourceSoTConduitController;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.ResourceDBEngineInterface;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheInvalidationService;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdentifierKey;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBSearchKey;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBSearchResultCache;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBSharedCacheTier;
 import net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common.PersistenceServiceBase;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
 
+    private static final long DEFAULT_CACHE_WARM_UP_LIMIT = 10000;
+    private static final int CACHE_WARM_UP_PAGE_SIZE = 100;
+
     @Inject
     private VirtualDBMethodOutcomeFactory outcomeFactory;
 
+    @Inject
+    private VirtualDBRefreshAheadService refreshAheadService;
+
+    @Inject
+    private VirtualDBCacheInvalidationService invalidationService;
+
+    @Inject
+    private VirtualDBSharedCacheTier sharedCacheTier;
+
+    @Inject
+    private VirtualDBCacheWarmUpService warmUpService;
+
+    private VirtualDBSingleFlightLoader<String, VirtualDBMethodOutcome> inFlightLoads = new VirtualDBSingleFlightLoader<>(this::copyLoadOutcome);
+
     abstract protected VirtualDBIdTypeBasedCacheBase specifyDBCache();
 
     abstract protected ResourceSoTConduitController specifySourceOfTruthAggregator();
@@ -70,6 +98,69 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
 
     protected ResourceType getResourceType(){return(specifyResourceType());}
 
+    /**
+     * The maximum number of Resources loaded into the cache (from the Persistence Service) during warm-up - which,
+     * as whole pages are loaded, may be exceeded by less than a page. Zero disables warm-up for this Resource type.
+     *
+     * @return The warm-up limit
+     */
+    protected long specifyCacheWarmUpLimit(){
+        return(DEFAULT_CACHE_WARM_UP_LIMIT);
+    }
+
+    //
+    //
+    // Cache Warm-Up
+    //
+    //
+
+    /**
+     * Pages through the Resources held by the Persistence Service and adds them to the cache, until either all
+     * have been loaded or the warm-up limit is reached. A failure part-way through ends the warm-up (with whatever
+     * has been loaded so far left in the cache). If the limit is reached, the next page is still fetched (though not
+     * loaded), as its absence shows that the cache now holds every Resource of the type.
+     *
+     * @param warmedResourceCount Incremented as each page of Resources is added to the cache (for progress reporting)
+     * @return The number of Resources added to the cache
+     */
+    public long warmCache(AtomicLong warmedResourceCount){
+        getLogger().debug(".warmCache(): Entry, resourceType --> {}", getResourceType());
+        long warmUpLimit = specifyCacheWarmUpLimit();
+        long loadedCount = 0;
+        if(warmUpLimit <= 0){
+            return(loadedCount);
+        }
+        long completeLoadToken = getDBCache().beginCompleteLoad();
+        try {
+            Bundle resourcePage = getPersistenceService().getResourcePage(getResourceType().toString(), CACHE_WARM_UP_PAGE_SIZE);
+            while(resourcePage != null && resourcePage.hasEntry() && loadedCount < warmUpLimit){
+                // Whole pages are synchronised in bulk, so the limit may be exceeded by (less than) a page
+                int pageCount = getDBCache().syncResources(resourcePage);
+                loadedCount += pageCount;
+                warmedResourceCount.addAndGet(pageCount);
+                resourcePage = getPersistenceService().getNextResourcePage(resourcePage);
+            }
+            if(resourcePage == null || !resourcePage.hasEntry()){
+                // Every page was loaded, so the cache now holds the full set of this ResourceType
+                getDBCache().markCacheComplete(completeLoadToken);
+            }
+        } catch (Exception ex) {
+            getLogger().warn(".warmCache(): Cache warm-up ended early, resourceType --> {}, error --> {}", getResourceType(), ex.getMessage());
+        }
+        getLogger().debug(".warmCache(): Exit, resourceType --> {}, loaded --> {}", getResourceType(), loadedCount);
+        return(loadedCount);
+    }
+
+    /**
+     * Holds a read back until the caches have been warmed, or the readiness timeout has passed (see
+     * VirtualDBCacheWarmUpService.awaitReadiness()).
+     */
+    private void awaitCacheWarmUp(){
+        if(!warmUpService.awaitReadiness()){
+            getLogger().trace(".awaitCacheWarmUp(): Proceeding before the cache warm-up has finished, resourceType --> {}", getResourceType());
+        }
+    }
+
     @Override
     public VirtualDBMethodOutcome createResource(Resource resourceToCreate) {
         getLogger().debug(".createResource(): Entry, resourceToCreate --> {}", resourceToCreate);
@@ -82,6 +173,12 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
             getLogger().trace(".createResource(): Resource Id created and added to Resource, Id --> {}", newId);
         } else {
             newId = resourceToCreate.getIdElement();
+            if(getDBCache().isUnchanged(resourceToCreate)){
+                getLogger().debug(".createResource(): Resource content is unchanged from the Cache, exiting");
+                VirtualDBMethodOutcome outcome = outcomeFactory.createResourceActivityOutcome(newId, VirtualDBActionStatusEnum.CREATION_FINISH, getResourceType().toString() + "::createResource()");
+                outcome.setResource(resourceToCreate);
+                return(outcome);
+            }
         }
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().createResource(resourceToCreate);
         if (outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.CREATION_FINISH)) {
@@ -89,6 +186,8 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
             VirtualDBMethodOutcome virtualDBOutcome = getPersistenceService().standardCreateResource(resourceToCreate);
             resourceToCreate.setId(virtualDBOutcome.getId());
             VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().createResource(resourceToCreate);
+            shareResource(resourceToCreate);
+            publishResourceChange(resourceToCreate);
             if(!newId.equals(outcome.getResource().getIdElement())){
                 getLogger().error(".createResource(): Server Overwrote the Id! Intended Value --> {}, value from Server --> {}", newId, outcome.getId());
             }
@@ -97,34 +196,165 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
         return (outcome);
     }
 
+    /**
+     * Retrieves a Resource by its (IdType) id. Resident Resources are served straight from the cache. On a cache
+     * miss the Resource's identifiers are resolved via the Persistence Service, the Resource is retrieved from the
+     * Sources-of-Truth and the result is then added to the cache (against the requested id) so subsequent reads
+     * are served locally. Concurrent misses for the same id share a single load.
+     *
+     * @param id The id of the Resource
+     * @return A VirtualDBMethodOutcome containing the Resource (if found)
+     */
     @Override
     public VirtualDBMethodOutcome getResource(IdType id){
+        getLogger().debug(".getResource(): Entry, id --> {}", id);
+        awaitCacheWarmUp();
         VirtualDBMethodOutcome outcome = getDBCache().getResource(id);
-        if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FAILURE){
-            VirtualDBMethodOutcome persistenceServiceOutcome = getPersistenceService().getResourceById(getResourceType().toString(), id);
-            if(persistenceServiceOutcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH){
-                Resource persistenceServiceOriginatedResource = (Resource)persistenceServiceOutcome.getResource();
-                List<Identifier> identifierList = resolveIdentifierSet(persistenceServiceOriginatedResource);
-                if(identifierList.isEmpty()) {
-                    outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
-                } else {
-                    outcome = getSourceOfTruthAggregator().reviewResource(identifierList);
-                }
-                return (outcome);
-            } else {
-                outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
-                return(outcome);
+        if(outcome.getStatusEnum() != VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE){
+            refreshAheadIfDue(id, (Resource)outcome.getResource());
+            getLogger().debug(".getResource(): Exit, served from cache, status --> {}", outcome.getStatusEnum());
+            return(outcome);
+        }
+        getLogger().trace(".getResource(): Resource not in Cache, going to Persistence Service & Sources-of-Truth");
+        String loadKey = "IdType:" + id.getIdPart();
+        outcome = inFlightLoads.load(loadKey, () -> timeLoad(() -> loadResource(id)));
+        getLogger().debug(".getResource(): Exit, status --> {}", outcome.getStatusEnum());
+        return (outcome);
+    }
+
+    private VirtualDBMethodOutcome loadResource(IdType id){
+        VirtualDBMethodOutcome outcome;
+        Resource sharedResource = sharedCacheTier.getResource(getResourceType().toString(), id);
+        if(sharedResource != null){
+            getLogger().trace(".loadResource(): Resource found in the shared cache tier, id --> {}", id);
+            getDBCache().syncResource(sharedResource);
+            outcome = outcomeFactory.createResourceActivityOutcome(id, VirtualDBActionStatusEnum.REVIEW_FINISH, getResourceType().toString() + "::getResource()");
+            outcome.setResource(sharedResource);
+            return(outcome);
+        }
+        VirtualDBMethodOutcome persistenceServiceOutcome = getPersistenceService().getResourceById(getResourceType().toString(), id);
+        if(persistenceServiceOutcome.getStatusEnum() != VirtualDBActionStatusEnum.REVIEW_FINISH){
+            outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
+            return(outcome);
+        }
+        Resource persistenceServiceOriginatedResource = (Resource)persistenceServiceOutcome.getResource();
+        List<Identifier> identifierList = resolveIdentifierSet(persistenceServiceOriginatedResource);
+        if(identifierList.isEmpty()) {
+            outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
+            return(outcome);
+        }
+        outcome = reviewResourceFromSourcesOfTruth(id, identifierList);
+        return (outcome);
+    }
+
+    private VirtualDBMethodOutcome reviewResourceFromSourcesOfTruth(IdType id, List<Identifier> identifierList){
+        VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().reviewResource(identifierList);
+        if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH && outcome.getResource() != null){
+            Resource sourceOfTruthResource = (Resource)outcome.getResource();
+            if(id.hasIdPart() && !id.getIdPart().equals(sourceOfTruthResource.getIdElement().getIdPart())){
+                sourceOfTruthResource.setId(id.getIdPart());
             }
-        } else {
+            getDBCache().syncResource(sourceOfTruthResource);
+            shareResource(sourceOfTruthResource);
+        }
+        return (outcome);
+    }
+
+    /**
+     * Makes a Resource (just loaded from, or written to, the Sources-of-Truth) available to the other Ladon nodes
+     * via the shared cache tier - a no-op when the tier isn't enabled.
+     *
+     * @param resource The Resource to be shared
+     */
+    private void shareResource(Resource resource){
+        sharedCacheTier.putResource(resource, getDBCache().getResourceRetirementInSeconds(resource));
+    }
+
+    /**
+     * Runs a load of a Resource (that is, a cache miss or refresh-ahead reload) and records its outcome and
+     * latency in the cache's statistics.
+     *
+     * @param loader The load to be run
+     * @return The outcome of the load
+     */
+    private VirtualDBMethodOutcome timeLoad(Supplier<VirtualDBMethodOutcome> loader){
+        long loadStartTime = System.nanoTime();
+        boolean loaded = false;
+        try {
+            VirtualDBMethodOutcome outcome = loader.get();
+            loaded = outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH && outcome.getResource() != null;
             return(outcome);
+        } finally {
+            getDBCache().getCacheStatistics().recordLoad(System.nanoTime() - loadStartTime, loaded);
+        }
+    }
+
+    /**
+     * Copies the outcome of a load for a caller that waited on (rather than performed) it, so that no two callers
+     * share a mutable VirtualDBMethodOutcome or Resource (see VirtualDBSingleFlightLoader).
+     *
+     * @param loadOutcome The outcome returned to the caller that performed the load
+     * @return A copy of the outcome, holding its own copy of the Resource (and OperationOutcome)
+     */
+    private VirtualDBMethodOutcome copyLoadOutcome(VirtualDBMethodOutcome loadOutcome){
+        VirtualDBMethodOutcome outcomeCopy = new VirtualDBMethodOutcome();
+        outcomeCopy.setStatusEnum(loadOutcome.getStatusEnum());
+        outcomeCopy.setCausalAction(loadOutcome.getCausalAction());
+        if(loadOutcome.getIdentifier() != null){
+            outcomeCopy.setIdentifier(loadOutcome.getIdentifier().copy());
+        }
+        outcomeCopy.setId(loadOutcome.getId());
+        outcomeCopy.setCreated(loadOutcome.getCreated());
+        if(loadOutcome.getResource() instanceof Resource){
+            outcomeCopy.setResource(((Resource)loadOutcome.getResource()).copy());
+        } else {
+            outcomeCopy.setResource(loadOutcome.getResource());
+        }
+        if(loadOutcome.getOperationOutcome() instanceof OperationOutcome){
+            outcomeCopy.setOperationOutcome(((OperationOutcome)loadOutcome.getOperationOutcome()).copy());
+        } else {
+            outcomeCopy.setOperationOutcome(loadOutcome.getOperationOutcome());
         }
+        return(outcomeCopy);
+    }
+
+    /**
+     * If the cached Resource is due a refresh-ahead reload (see VirtualDBIdTypeBasedCacheBase.claimRefresh()), queues
+     * an asynchronous reload of it from the Sources-of-Truth. The reload shares the single-flight key of a by-id
+     * load, so it also satisfies any concurrent misses for the same id.
+     *
+     * @param id The id the Resource was read by
+     * @param cachedResource The Resource as served from the cache
+     */
+    private void refreshAheadIfDue(IdType id, Resource cachedResource){
+        if(id == null || cachedResource == null || !id.hasIdPart()){
+            return;
+        }
+        if(!getDBCache().claimRefresh(id)){
+            return;
+        }
+        List<Identifier> identifierList = resolveIdentifierSet(cachedResource);
+        if(identifierList.isEmpty()){
+            return;
+        }
+        getLogger().trace(".refreshAheadIfDue(): Queueing refresh-ahead reload, id --> {}", id);
+        String loadKey = "IdType:" + id.getIdPart();
+        refreshAheadService.submitRefresh(() -> inFlightLoads.load(loadKey, () -> timeLoad(() -> reviewResourceFromSourcesOfTruth(id, identifierList))));
     }
 
     @Override
     public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate) {
+        if(getDBCache().isUnchanged(resourceToUpdate)){
+            getLogger().debug(".updateResource(): Resource content is unchanged from the Cache, exiting");
+            VirtualDBMethodOutcome outcome = outcomeFactory.createResourceActivityOutcome(resourceToUpdate.getIdElement(), VirtualDBActionStatusEnum.UPDATE_FINISH, getResourceType().toString() + "::updateResource()");
+            outcome.setResource(resourceToUpdate);
+            return(outcome);
+        }
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().updateResource(resourceToUpdate);
         if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.UPDATE_FINISH) {
             VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().updateResource(resourceToUpdate);
+            shareResource(resourceToUpdate);
+            publishResourceChange(resourceToUpdate);
         }
         return (outcome);
     }
@@ -133,9 +363,25 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     public VirtualDBMethodOutcome deleteResource(Resource resourceToDelete) {
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().deleteResource(resourceToDelete);
         VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().deleteResource(resourceToDelete);
+        sharedCacheTier.removeResource(getResourceType().toString(), resourceToDelete.getIdElement());
+        publishResourceChange(resourceToDelete);
         return (outcome);
     }
 
+    /**
+     * Invalidates this node's cached searches of the type, and tells the other Ladon nodes to discard their copies
+     * of the changed Resource.
+     *
+     * @param changedResource The Resource that has been created, updated or deleted
+     */
+    private void publishResourceChange(Resource changedResource){
+        VirtualDBSearchResultCache searchResultCache = getDBCache().getSearchResultCache();
+        if(searchResultCache != null){
+            searchResultCache.invalidateAll();
+        }
+        invalidationService.publishInvalidation(getResourceType().toString(), changedResource.getIdElement(), resolveIdentifierSet(changedResource));
+    }
+
     private void updateCache(VirtualDBMethodOutcome outcome){
         if(outcome.getStatusEnum() != VirtualDBActionStatusEnum.SEARCH_FINISHED) {
             return;
@@ -147,8 +393,14 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
         if(outcomeBundle.getTotal() < 1){
             return;
         }
-        for(Bundle.BundleEntryComponent entry: outcomeBundle.getEntry()){
-            VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().syncResource(entry.getResource());
+        getDBCache().syncResources(outcomeBundle);
+        if(sharedCacheTier.isEnabled()){
+            for(Bundle.BundleEntryComponent currentEntry: outcomeBundle.getEntry()){
+                Resource currentResource = currentEntry.getResource();
+                if(currentResource != null && currentResource.getResourceType() == getResourceType()){
+                    shareResource(currentResource);
+                }
+            }
         }
     }
 
@@ -158,23 +410,191 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     //
     //
 
+    /**
+     * Answers a compartment-style query ("everything of this type that points at that Resource") from the cache,
+     * using the cache's reference index (see VirtualDBIdTypeBasedCacheBase.resolveReferenceSet()). Only cached
+     * Resources are returned, so the caller should fall back to a search of the Sources-of-Truth where it needs
+     * a complete answer.
+     *
+     * @param referencedId The id of the referenced Resource (including its ResourceType)
+     * @return The cached Resources of this engine's type that reference it
+     */
+    public List<Resource> getCachedResourcesReferencing(IdType referencedId){
+        getLogger().debug(".getCachedResourcesReferencing(): Entry, referencedId --> {}", referencedId);
+        List<Resource> referencingResources = getDBCache().getResourcesReferencing(referencedId);
+        getLogger().debug(".getCachedResourcesReferencing(): Exit, number found --> {}", referencingResources.size());
+        return(referencingResources);
+    }
+
     public VirtualDBMethodOutcome findResourceViaIdentifier(Identifier identifier) {
         getLogger().debug(".findResourceViaIdentifier(): Entry");
+        awaitCacheWarmUp();
         VirtualDBMethodOutcome outcome = getDBCache().getResource(identifier);
+        if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH && outcome.getResource() != null) {
+            Resource cachedResource = (Resource)outcome.getResource();
+            refreshAheadIfDue(cachedResource.getIdElement(), cachedResource);
+        }
         if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE) {
+            if(getDBCache().isUnknownIdentifier(identifier)){
+                getLogger().debug(".findResourceViaIdentifier(): Exit, Identifier recently unknown to the Sources-of-Truth");
+                return(outcome);
+            }
             getLogger().trace(".getResource(): Resource not in Cache, going to Sources-of-Truth");
-            outcome = getSourceOfTruthAggregator().reviewResource(identifier);
+            VirtualDBIdentifierKey identifierKey = VirtualDBIdentifierKey.fromIdentifier(identifier);
+            if(identifierKey == null){
+                // Without a key there is nothing to coalesce concurrent loads of the same Identifier on
+                outcome = timeLoad(() -> loadResourceViaIdentifier(identifier));
+            } else {
+                outcome = inFlightLoads.load("Identifier:" + identifierKey, () -> timeLoad(() -> loadResourceViaIdentifier(identifier)));
+            }
         }
         getLogger().debug(".findResourceViaIdentifier(): Exit");
         return (outcome);
     }
 
+    private VirtualDBMethodOutcome loadResourceViaIdentifier(Identifier identifier){
+        VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().reviewResource(identifier);
+        if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH && outcome.getResource() != null){
+            getDBCache().syncResource((Resource)outcome.getResource());
+            shareResource((Resource)outcome.getResource());
+        } else {
+            recordUnknownIdentifierIfNotFound(identifier, outcome);
+        }
+        return(outcome);
+    }
+
+    /**
+     * Adds the Identifier to the cache's negative (unknown Identifier) cache, but only where the Sources-of-Truth
+     * have definitively reported that they hold no Resource with it - that is, their OperationOutcome carries a
+     * "not-found" issue. Any other unsuccessful review (an error or timeout within a Source-of-Truth, or a review
+     * that simply returned nothing) is not remembered, so the next lookup of the Identifier tries again.
+     *
+     * @param identifier The Identifier that was reviewed
+     * @param outcome The outcome of the review of the Sources-of-Truth
+     */
+    void recordUnknownIdentifierIfNotFound(Identifier identifier, VirtualDBMethodOutcome outcome){
+        if(isNotFoundOutcome(outcome)){
+            getDBCache().recordUnknownIdentifier(identifier);
+        } else {
+            getLogger().trace(".recordUnknownIdentifierIfNotFound(): Review was not a definitive not-found, identifier --> {}, status --> {}", identifier, outcome.getStatusEnum());
+        }
+    }
+
+    private static boolean isNotFoundOutcome(VirtualDBMethodOutcome outcome){
+        if(outcome == null || outcome.getResource() != null || !(outcome.getOperationOutcome() instanceof OperationOutcome)){
+            return(false);
+        }
+        for(OperationOutcome.OperationOutcomeIssueComponent currentIssue: ((OperationOutcome)outcome.getOperationOutcome()).getIssue()){
+            if(currentIssue.getCode() == OperationOutcome.IssueType.NOTFOUND){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
     @Override
     public VirtualDBMethodOutcome getResourcesViaSearchCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
         getLogger().debug(".getResourcesViaSearchCriteria(): Entry, ResourceType --> {}, Search Name --> {}", resourceType.toString(), searchName.getSearchName());
+        awaitCacheWarmUp();
+        VirtualDBSearchResultCache searchResultCache = null;
+        VirtualDBSearchKey searchKey = null;
+        if(resourceType == getResourceType()) {
+            List<Resource> cachedMatches = getDBCache().searchCache(searchName, parameterSet);
+            if (cachedMatches != null) {
+                getDBCache().getCacheStatistics().recordSearch(true);
+                VirtualDBMethodOutcome outcome = generateCachedSearchOutcome(searchName, cachedMatches);
+                getLogger().debug(".getResourcesViaSearchCriteria(): Exit, served from cache, matches --> {}", cachedMatches.size());
+                return (outcome);
+            }
+            searchResultCache = getDBCache().getSearchResultCache();
+            searchKey = VirtualDBSearchKey.fromSearch(resourceType, searchName, parameterSet);
+        }
+        boolean isCacheableSearch = searchResultCache != null && searchKey != null;
+        long searchToken = 0;
+        if(isCacheableSearch){
+            List<Resource> cachedResult = resolveCachedSearchResult(searchResultCache, searchKey);
+            if(cachedResult != null){
+                getDBCache().getCacheStatistics().recordSearch(true);
+                VirtualDBMethodOutcome outcome = generateCachedSearchOutcome(searchName, cachedResult);
+                getLogger().debug(".getResourcesViaSearchCriteria(): Exit, served from search-result cache, matches --> {}", cachedResult.size());
+                return (outcome);
+            }
+            searchToken = searchResultCache.beginSearch();
+        }
+        getDBCache().getCacheStatistics().recordSearch(false);
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().getResourcesViaSearchCriteria(resourceType, searchName, parameterSet);
         updateCache(outcome);
-        getLogger().debug(".getResourcesViaSearchCriteria(): Exit");
+        if(isCacheableSearch){
+            cacheSearchResult(searchResultCache, searchKey, outcome, searchToken);
+        }
+        getLogger().debug(".getResourcesViaSearchCriteria(): Exit, served from Sources-of-Truth");
+        return(outcome);
+    }
+
+    /**
+     * Resolves a cached search result (a list of ids) into the Resources it refers to. If any of them is no longer
+     * in the cache, the result can't be served and is discarded.
+     *
+     * @return The matching Resources, or null if the search's result isn't (fully) available from the cache
+     */
+    private List<Resource> resolveCachedSearchResult(VirtualDBSearchResultCache searchResultCache, VirtualDBSearchKey searchKey){
+        List<IdType> resultIds = searchResultCache.getResultIds(searchKey);
+        if(resultIds == null){
+            return(null);
+        }
+        Map<IdType, Resource> resultResources = getDBCache().getResources(resultIds);
+        if(resultResources.size() != resultIds.size()){
+            getLogger().trace(".resolveCachedSearchResult(): Result refers to Resources no longer in the cache, searchKey --> {}", searchKey);
+            searchResultCache.invalidate(searchKey);
+            return(null);
+        }
+        return(new ArrayList<>(resultResources.values()));
+    }
+
+    /**
+     * Caches the ids of the Resources returned by a (successful) search of the Sources-of-Truth. Partial (paged)
+     * results, and results that include Resources of other types (or Resources without an id), can't be rebuilt
+     * from the Resource cache, so aren't cached.
+     */
+    private void cacheSearchResult(VirtualDBSearchResultCache searchResultCache, VirtualDBSearchKey searchKey, VirtualDBMethodOutcome outcome, long searchToken){
+        if(outcome.getStatusEnum() != VirtualDBActionStatusEnum.SEARCH_FINISHED || !(outcome.getResource() instanceof Bundle)){
+            return;
+        }
+        Bundle outcomeBundle = (Bundle)outcome.getResource();
+        if(outcomeBundle.hasTotal() && outcomeBundle.getTotal() != outcomeBundle.getEntry().size()){
+            // Only part (e.g. the first page) of the result is present
+            return;
+        }
+        Set<IdType> resultIds = new LinkedHashSet<>();
+        for(Bundle.BundleEntryComponent currentEntry: outcomeBundle.getEntry()){
+            Resource currentResource = currentEntry.getResource();
+            if(currentResource == null || currentResource.getResourceType() != getResourceType() || !currentResource.getIdElement().hasIdPart()){
+                return;
+            }
+            resultIds.add(new IdType(getResourceType().toString(), currentResource.getIdElement().getIdPart()));
+        }
+        searchResultCache.putResultIds(searchKey, new ArrayList<>(resultIds), searchToken);
+    }
+
+    private VirtualDBMethodOutcome generateCachedSearchOutcome(SearchNameEnum searchName, List<Resource> cachedMatches){
+        Bundle searchBundle = new Bundle();
+        searchBundle.setType(Bundle.BundleType.SEARCHSET);
+        searchBundle.setTotal(cachedMatches.size());
+        for(Resource matchedResource: cachedMatches){
+            Bundle.BundleEntryComponent entry = searchBundle.addEntry();
+            entry.setResource(matchedResource);
+            entry.getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+        }
+        OperationOutcome opOutcome = new OperationOutcome();
+        OperationOutcome.OperationOutcomeIssueComponent issue = opOutcome.addIssue();
+        issue.setSeverity(OperationOutcome.IssueSeverity.INFORMATION);
+        issue.setCode(OperationOutcome.IssueType.INFORMATIONAL);
+        issue.setDiagnostics(getResourceType().toString() + "::getResourcesViaSearchCriteria(): Search " + searchName.getSearchName() + " served from cache");
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setCausalAction(VirtualDBActionTypeEnum.SEARCH);
+        outcome.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FINISHED);
+        outcome.setResource(searchBundle);
+        outcome.setOperationOutcome(opOutcome);
         return(outcome);
     }
 }
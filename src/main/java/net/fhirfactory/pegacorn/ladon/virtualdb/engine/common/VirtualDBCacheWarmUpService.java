@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms the VirtualDB Resource Caches at start-up, so that the first traffic after a restart doesn't all go to the
+ * Sources of Truth. Once the application scope is initialised, each ResourceDBEngine's warmCache() is run (in
+ * parallel, across a small pool of threads) to page its Resources in from its Persistence Service.
+ *
+ * Progress is reported per Resource type, and isReady() only returns true once every engine has finished. The
+ * ResourceDBEngines gate their reads on the warm-up (see awaitReadiness()), holding callers back until the caches
+ * are warm - but for no longer than the readiness timeout, after which they are served from the partly warmed
+ * caches (and the Sources of Truth).
+ */
+@ApplicationScoped
+public class VirtualDBCacheWarmUpService {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheWarmUpService.class);
+
+    private static final int WARM_UP_THREAD_COUNT = 4;
+    private static final long DEFAULT_READINESS_TIMEOUT_IN_SECONDS = 60;
+
+    public static final String READINESS_TIMEOUT_SETTING = VirtualDBCacheSettings.SETTING_PREFIX + "CACHE_WARM_UP_READINESS_TIMEOUT_IN_SECONDS";
+
+    @Inject
+    private Instance<ResourceDBEngine> resourceDBEngines;
+
+    private ExecutorService warmUpExecutor;
+    private Map<String, AtomicLong> warmedResourceCounts;
+    private AtomicInteger pendingEngineCount;
+    private CountDownLatch warmUpLatch;
+    private volatile boolean warmUpStarted;
+    private volatile long warmUpStartTime;
+    private volatile long warmUpDurationInMilliseconds;
+    private long readinessTimeoutInMilliseconds;
+
+    public VirtualDBCacheWarmUpService(){
+        this.warmedResourceCounts = new ConcurrentHashMap<>();
+        this.pendingEngineCount = new AtomicInteger(0);
+        this.warmUpLatch = new CountDownLatch(1);
+        this.warmUpStarted = false;
+        this.warmUpDurationInMilliseconds = -1;
+        this.readinessTimeoutInMilliseconds = VirtualDBCacheSettings.resolveLongSetting(READINESS_TIMEOUT_SETTING, DEFAULT_READINESS_TIMEOUT_IN_SECONDS) * 1000;
+    }
+
+    protected void onApplicationInitialised(@Observes @Initialized(ApplicationScoped.class) Object event){
+        startWarmUp();
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        if(this.warmUpExecutor != null){
+            this.warmUpExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts the (asynchronous) warm-up of all the caches. Only the first call has any effect.
+     */
+    public synchronized void startWarmUp(){
+        if(warmUpStarted){
+            return;
+        }
+        warmUpStarted = true;
+        warmUpStartTime = System.currentTimeMillis();
+        List<ResourceDBEngine> engineList = new ArrayList<>();
+        for(ResourceDBEngine currentEngine: resourceDBEngines){
+            engineList.add(currentEngine);
+        }
+        LOG.info(".startWarmUp(): Warming the VirtualDB caches, engine count --> {}", engineList.size());
+        if(engineList.isEmpty()){
+            completeWarmUp();
+            return;
+        }
+        pendingEngineCount.set(engineList.size());
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        warmUpExecutor = Executors.newFixedThreadPool(Math.min(WARM_UP_THREAD_COUNT, engineList.size()), runnable -> {
+            Thread warmUpThread = new Thread(runnable, "VirtualDB-Cache-WarmUp-" + threadCounter.incrementAndGet());
+            warmUpThread.setDaemon(true);
+            return (warmUpThread);
+        });
+        for(ResourceDBEngine currentEngine: engineList){
+            String resourceType = currentEngine.getResourceType().toString();
+            AtomicLong warmedResourceCount = warmedResourceCounts.computeIfAbsent(resourceType, key -> new AtomicLong(0));
+            warmUpExecutor.execute(() -> {
+                try {
+                    currentEngine.warmCache(warmedResourceCount);
+                } catch (Exception ex) {
+                    LOG.warn(".startWarmUp(): Cache warm-up failed, resourceType --> {}, error --> {}", resourceType, ex.getMessage());
+                } finally {
+                    LOG.debug(".startWarmUp(): Cache warm-up finished, resourceType --> {}, loaded --> {}", resourceType, warmedResourceCount.get());
+                    if(pendingEngineCount.decrementAndGet() == 0){
+                        completeWarmUp();
+                    }
+                }
+            });
+        }
+        warmUpExecutor.shutdown();
+    }
+
+    private void completeWarmUp(){
+        warmUpDurationInMilliseconds = System.currentTimeMillis() - warmUpStartTime;
+        warmUpLatch.countDown();
+        LOG.info(".completeWarmUp(): VirtualDB cache warm-up complete, duration (ms) --> {}, loaded --> {}", warmUpDurationInMilliseconds, warmedResourceCounts);
+    }
+
+    /**
+     * @return True once the warm-up of every cache has finished (successfully or otherwise)
+     */
+    public boolean isReady(){
+        return(warmUpLatch.getCount() == 0);
+    }
+
+    /**
+     * Blocks until the warm-up has finished, or until the readiness timeout (measured from the start of the
+     * warm-up) has elapsed - so once the timeout has passed, callers are no longer held back at all. Callers are
+     * not held back before the warm-up has started.
+     *
+     * @return True if the warm-up has finished
+     */
+    public boolean awaitReadiness(){
+        if(isReady() || !warmUpStarted){
+            return(isReady());
+        }
+        long remainingTimeout = warmUpStartTime + readinessTimeoutInMilliseconds - System.currentTimeMillis();
+        if(remainingTimeout <= 0){
+            return(false);
+        }
+        try {
+            return(awaitReadiness(remainingTimeout, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return(isReady());
+        }
+    }
+
+    /**
+     * Blocks until the warm-up has finished, or the timeout elapses.
+     *
+     * @param timeout The maximum time to wait
+     * @param timeUnit The unit of the timeout
+     * @return True if the warm-up has finished
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitReadiness(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return(warmUpLatch.await(timeout, timeUnit));
+    }
+
+    /**
+     * @return The number of Resources loaded so far, by Resource type
+     */
+    public Map<String, AtomicLong> getWarmedResourceCounts(){
+        return(Collections.unmodifiableMap(warmedResourceCounts));
+    }
+
+    /**
+     * @return The number of caches still being warmed
+     */
+    public int getPendingCacheCount(){
+        return(pendingEngineCount.get());
+    }
+
+    /**
+     * @return How long the warm-up took, or -1 if it hasn't finished
+     */
+    public long getWarmUpDurationInMilliseconds(){
+        return(warmUpDurationInMilliseconds);
+    }
+}
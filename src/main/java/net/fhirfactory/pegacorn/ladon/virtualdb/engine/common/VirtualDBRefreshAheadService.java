@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the asynchronous (refresh-ahead) reloads of cache entries that are nearing their expiry, on behalf of all
+ * the ResourceDBEngines. The work queue is bounded: if it is full the refresh is simply dropped, and the entry
+ * expires (and is reloaded on its next read) as it would have without refresh-ahead.
+ */
+@ApplicationScoped
+public class VirtualDBRefreshAheadService {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBRefreshAheadService.class);
+
+    private static final int REFRESH_THREAD_COUNT = 2;
+    private static final int REFRESH_QUEUE_CAPACITY = 1000;
+
+    private ThreadPoolExecutor refreshExecutor;
+    private LongAdder submittedRefreshCount;
+    private LongAdder droppedRefreshCount;
+    private boolean isInitialised;
+
+    public VirtualDBRefreshAheadService(){
+        this.submittedRefreshCount = new LongAdder();
+        this.droppedRefreshCount = new LongAdder();
+        this.isInitialised = false;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        if(!this.isInitialised) {
+            LOG.debug(".initialise(): Starting the refresh-ahead threads");
+            AtomicInteger threadCounter = new AtomicInteger(0);
+            this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREAD_COUNT, REFRESH_THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread refreshThread = new Thread(runnable, "VirtualDB-Cache-Refresh-" + threadCounter.incrementAndGet());
+                        refreshThread.setDaemon(true);
+                        return (refreshThread);
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.isInitialised = true;
+        }
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        LOG.debug(".shutdown(): Stopping the refresh-ahead threads");
+        if(this.refreshExecutor != null){
+            this.refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a refresh. A refresh is only counted as submitted once the executor has accepted it; one that is
+     * rejected (the queue is full, or the service is shutting down) is counted as dropped. Failures of the reload
+     * itself are logged (the entry then expires as normal).
+     *
+     * @param refreshTask The reload to be performed
+     */
+    public void submitRefresh(Runnable refreshTask){
+        if(refreshExecutor == null || refreshExecutor.isShutdown()){
+            droppedRefreshCount.increment();
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refreshTask.run();
+                } catch (Exception ex) {
+                    LOG.warn(".submitRefresh(): Refresh-ahead reload failed, error --> {}", ex.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            droppedRefreshCount.increment();
+            LOG.trace(".submitRefresh(): Refresh-ahead queue is full, refresh dropped");
+            return;
+        }
+        submittedRefreshCount.increment();
+    }
+
+    public long getSubmittedRefreshCount(){
+        return(submittedRefreshCount.sum());
+    }
+
+    public long getDroppedRefreshCount(){
+        return(droppedRefreshCount.sum());
+    }
+}
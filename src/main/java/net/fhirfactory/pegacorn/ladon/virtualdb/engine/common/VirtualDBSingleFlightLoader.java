@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller for a key performs the load, and any callers
+ * arriving while it is in flight wait for (and share) its result, rather than each making their own remote call.
+ * Once the load completes the key is forgotten, so later callers start a fresh load.
+ *
+ * As the loaded value is typically mutable, each waiting caller is handed its own copy of it (made by the
+ * resultCopier supplied on construction) rather than the instance returned to the caller that did the load.
+ *
+ * @param <K> The key type
+ * @param <V> The loaded value type
+ */
+public class VirtualDBSingleFlightLoader<K, V> {
+    private ConcurrentHashMap<K, CompletableFuture<V>> inFlightLoads;
+    private UnaryOperator<V> resultCopier;
+
+    /**
+     * Creates a loader that hands the same value instance to every caller (for immutable values).
+     */
+    public VirtualDBSingleFlightLoader(){
+        this(UnaryOperator.identity());
+    }
+
+    /**
+     * @param resultCopier Makes the copy of a loaded value that is handed to each waiting caller
+     */
+    public VirtualDBSingleFlightLoader(UnaryOperator<V> resultCopier){
+        this.inFlightLoads = new ConcurrentHashMap<>();
+        this.resultCopier = resultCopier;
+    }
+
+    /**
+     * @param key The key being loaded
+     * @param loader Performs the load (only invoked if no load for the key is already in flight)
+     * @return The loaded value, or a copy of it if it was loaded by another thread
+     */
+    public V load(K key, Supplier<V> loader){
+        CompletableFuture<V> newLoad = new CompletableFuture<>();
+        CompletableFuture<V> inFlightLoad = inFlightLoads.putIfAbsent(key, newLoad);
+        if(inFlightLoad != null){
+            try {
+                V sharedValue = inFlightLoad.join();
+                if(sharedValue == null){
+                    return(null);
+                }
+                return(resultCopier.apply(sharedValue));
+            } catch (CompletionException ex) {
+                if(ex.getCause() instanceof RuntimeException){
+                    throw (RuntimeException)ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        try {
+            V loadedValue = loader.get();
+            newLoad.complete(loadedValue);
+            return(loadedValue);
+        } catch (RuntimeException | Error ex) {
+            newLoad.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlightLoads.remove(key, newLoad);
+        }
+    }
+
+    /**
+     * @return The number of loads currently in flight
+     */
+    public int getInFlightLoadCount(){
+        return(inFlightLoads.size());
+    }
+}
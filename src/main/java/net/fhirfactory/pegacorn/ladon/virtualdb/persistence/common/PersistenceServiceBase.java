@@ -37,6 +37,7 @@ import net.fhirfactory.pegacorn.petasos.core.sta.wup.GenericSTAClientWUPTemplate
 import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
 import net.fhirfactory.pegacorn.petasos.model.processingplant.ProcessingPlantServicesInterface;
 import net.fhirfactory.pegacorn.platform.restfulapi.PegacornInternalFHIRClientServices;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
@@ -148,6 +149,41 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
         }
     }
 
+    /**
+     * Retrieves the first page of all the Resources of the given type held by the Persistence Service.
+     *
+     * @param resourceType The type of Resource to be paged through
+     * @param pageSize The (requested) number of Resources per page
+     * @return A (searchset) Bundle containing the first page of Resources
+     */
+    public Bundle getResourcePage(String resourceType, int pageSize){
+        getLogger().debug(".getResourcePage(): Entry, resourceType --> {}, pageSize --> {}", resourceType, pageSize);
+        Bundle resourcePage = getFHIRClientServices().getClient()
+                .search()
+                .forResource(resourceType)
+                .count(pageSize)
+                .returnBundle(Bundle.class)
+                .execute();
+        return(resourcePage);
+    }
+
+    /**
+     * Retrieves the page following the given page (as returned by getResourcePage() or a previous call).
+     *
+     * @param currentPage The current page
+     * @return The next page, or null if the current page is the last
+     */
+    public Bundle getNextResourcePage(Bundle currentPage){
+        if(currentPage == null || currentPage.getLink(IBaseBundle.LINK_NEXT) == null){
+            return(null);
+        }
+        Bundle nextPage = getFHIRClientServices().getClient()
+                .loadPage()
+                .next(currentPage)
+                .execute();
+        return(nextPage);
+    }
+
     public VirtualDBMethodOutcome standardCreateResource(Resource resourceToCreate) {
         getLogger().debug(".standardCreateResource(): Entry, resourceToCreate --> {}", resourceToCreate);
         MethodOutcome callOutcome = getFHIRClientServices().getClient()
@@ -0,0 +1,113 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives the VirtualDBCacheExpiryService's house-keeping by hand (its background thread is never started), against
+ * a simple map-backed expiry target.
+ */
+public class VirtualDBCacheExpiryServiceTest {
+
+    // Comfortably more than one tick of the wheel
+    private static final long WAIT_FOR_TICKS_IN_MILLISECONDS = 600;
+
+    private VirtualDBCacheExpiryService expiryService;
+    private MapExpiryTarget target;
+
+    @Before
+    public void setUp() {
+        expiryService = new VirtualDBCacheExpiryService();
+        expiryService.performHousekeeping();
+        target = new MapExpiryTarget();
+    }
+
+    @Test
+    public void dueEntryIsExpired() throws InterruptedException {
+        VirtualDBCacheEntry entry = buildEntry(expiryService.getCoarseTime());
+        target.entries.put("p1", entry);
+        expiryService.scheduleExpiry(target, "p1", entry);
+        assertEquals(1, expiryService.getScheduledCount());
+        Thread.sleep(WAIT_FOR_TICKS_IN_MILLISECONDS);
+        expiryService.performHousekeeping();
+        assertNull(target.entries.get("p1"));
+        assertEquals(1, target.expiredKeys.size());
+        assertEquals(0, expiryService.getScheduledCount());
+    }
+
+    @Test
+    public void entryIsNotExpiredBeforeItIsDue() throws InterruptedException {
+        VirtualDBCacheEntry entry = buildEntry(expiryService.getCoarseTime() + 60000);
+        target.entries.put("p1", entry);
+        expiryService.scheduleExpiry(target, "p1", entry);
+        Thread.sleep(WAIT_FOR_TICKS_IN_MILLISECONDS);
+        expiryService.performHousekeeping();
+        assertTrue(target.expiredKeys.isEmpty());
+        assertEquals(1, expiryService.getScheduledCount());
+    }
+
+    @Test
+    public void extendedEntryIsRescheduledRatherThanExpired() throws InterruptedException {
+        VirtualDBCacheEntry entry = buildEntry(expiryService.getCoarseTime());
+        target.entries.put("p1", entry);
+        expiryService.scheduleExpiry(target, "p1", entry);
+        entry.setExpiryTime(expiryService.getCoarseTime() + 60000);
+        Thread.sleep(WAIT_FOR_TICKS_IN_MILLISECONDS);
+        expiryService.performHousekeeping();
+        assertTrue(target.expiredKeys.isEmpty());
+        assertEquals(1, expiryService.getScheduledCount());
+    }
+
+    @Test
+    public void collectedEntryIsDroppedFromTheWheel() throws InterruptedException {
+        VirtualDBCacheEntry entry = buildEntry(expiryService.getCoarseTime());
+        expiryService.scheduleExpiry(target, "p1", entry);
+        WeakReference<VirtualDBCacheEntry> entryReference = new WeakReference<>(entry);
+        entry = null;
+        for (int attempt = 0; attempt < 50 && entryReference.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // The wheel must not be what keeps the entry reachable
+        assertNull(entryReference.get());
+        Thread.sleep(WAIT_FOR_TICKS_IN_MILLISECONDS);
+        expiryService.performHousekeeping();
+        assertTrue(target.expiredKeys.isEmpty());
+        assertEquals(0, expiryService.getScheduledCount());
+    }
+
+    @Test
+    public void incompleteScheduleRequestIsIgnored() {
+        expiryService.scheduleExpiry(target, null, buildEntry(0));
+        expiryService.scheduleExpiry(null, "p1", buildEntry(0));
+        expiryService.scheduleExpiry(target, "p1", null);
+        assertEquals(0, expiryService.getScheduledCount());
+    }
+
+    private VirtualDBCacheEntry buildEntry(long expiryTime) {
+        return (new VirtualDBCacheEntry(new Patient(), 0L, expiryTime));
+    }
+
+    private static class MapExpiryTarget implements VirtualDBCacheExpiryTarget<String> {
+        private ConcurrentMap<String, VirtualDBCacheEntry> entries = new ConcurrentHashMap<>();
+        private List<String> expiredKeys = new ArrayList<>();
+
+        @Override
+        public void expireCacheEntry(String key, VirtualDBCacheEntry entry) {
+            if (entries.remove(key, entry)) {
+                expiredKeys.add(key);
+            }
+        }
+    }
+}
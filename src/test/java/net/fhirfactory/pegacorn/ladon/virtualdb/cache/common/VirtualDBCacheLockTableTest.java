@@ -0,0 +1,49 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Test;
+
+public class VirtualDBCacheLockTableTest {
+
+    @Test
+    public void stripeCountIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new VirtualDBCacheLockTable(1).getStripeCount());
+        assertEquals(64, new VirtualDBCacheLockTable(64).getStripeCount());
+        assertEquals(128, new VirtualDBCacheLockTable(65).getStripeCount());
+        int defaultStripeCount = new VirtualDBCacheLockTable().getStripeCount();
+        assertEquals(0, defaultStripeCount & (defaultStripeCount - 1));
+        assertTrue(defaultStripeCount >= Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void equalKeysShareALock() {
+        VirtualDBCacheLockTable lockTable = new VirtualDBCacheLockTable(256);
+        assertSame(lockTable.getLock(new IdType("Patient", "1234")), lockTable.getLock(new IdType("Patient", "1234")));
+        assertSame(lockTable.getLock("Patient/1234"), lockTable.getLock(new String("Patient/1234")));
+    }
+
+    @Test
+    public void nullKeyHasALock() {
+        VirtualDBCacheLockTable lockTable = new VirtualDBCacheLockTable(16);
+        assertSame(lockTable.getLock(null), lockTable.getLock(null));
+    }
+
+    @Test
+    public void keysAreSpreadAcrossTheStripes() {
+        VirtualDBCacheLockTable lockTable = new VirtualDBCacheLockTable(64);
+        Set<Object> usedLocks = Collections.newSetFromMap(new IdentityHashMap<>());
+        // Keys whose hashes differ only in their upper bits must still be spread out
+        for (int counter = 0; counter < 1024; counter++) {
+            usedLocks.add(lockTable.getLock(counter << 16));
+        }
+        assertTrue("Only " + usedLocks.size() + " of 64 stripes used", usedLocks.size() > 48);
+    }
+}
@@ -0,0 +1,110 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBCacheOffHeapStoreTest {
+
+    private static final int SLAB_SIZE = 4 * 1024 * 1024;
+
+    private VirtualDBCacheOffHeapStore offHeapStore;
+
+    @Before
+    public void setUp() {
+        offHeapStore = new VirtualDBCacheOffHeapStore();
+        offHeapStore.setCapacityInBytes(64L * 1024 * 1024);
+    }
+
+    @Test
+    public void contentIsReadBackUnchanged() {
+        byte[] content = buildContent(300, (byte) 7);
+        VirtualDBCacheOffHeapBlock block = offHeapStore.allocate(content);
+        assertNotNull(block);
+        assertEquals(300, block.getLength());
+        assertEquals(512, block.getCapacity());
+        assertArrayEquals(content, offHeapStore.read(block));
+    }
+
+    @Test
+    public void metricsTrackAllocationsAndFrees() {
+        VirtualDBCacheOffHeapBlock firstBlock = offHeapStore.allocate(buildContent(300, (byte) 1));
+        VirtualDBCacheOffHeapBlock secondBlock = offHeapStore.allocate(buildContent(400, (byte) 2));
+        assertEquals(2, offHeapStore.getBlockCount());
+        assertEquals(700, offHeapStore.getUsedBytes());
+        // Both fit the same size class, so share one slab
+        assertEquals(SLAB_SIZE, offHeapStore.getReservedBytes());
+        offHeapStore.free(firstBlock);
+        offHeapStore.free(secondBlock);
+        assertEquals(0, offHeapStore.getBlockCount());
+        assertEquals(0, offHeapStore.getUsedBytes());
+        // Slabs are kept for re-use
+        assertEquals(SLAB_SIZE, offHeapStore.getReservedBytes());
+    }
+
+    @Test
+    public void freedSlotIsReused() {
+        VirtualDBCacheOffHeapBlock firstBlock = offHeapStore.allocate(buildContent(100, (byte) 1));
+        offHeapStore.free(firstBlock);
+        byte[] newContent = buildContent(120, (byte) 9);
+        VirtualDBCacheOffHeapBlock secondBlock = offHeapStore.allocate(newContent);
+        assertEquals(SLAB_SIZE, offHeapStore.getReservedBytes());
+        assertArrayEquals(newContent, offHeapStore.read(secondBlock));
+    }
+
+    @Test
+    public void largeContentIsGivenADedicatedBlock() {
+        byte[] content = buildContent(2 * 1024 * 1024, (byte) 3);
+        VirtualDBCacheOffHeapBlock block = offHeapStore.allocate(content);
+        assertEquals(content.length, offHeapStore.getReservedBytes());
+        assertArrayEquals(content, offHeapStore.read(block));
+        offHeapStore.free(block);
+        // Dedicated blocks are released rather than kept
+        assertEquals(0, offHeapStore.getReservedBytes());
+    }
+
+    @Test
+    public void allocationBeyondCapacityFails() {
+        offHeapStore.setCapacityInBytes(1024);
+        assertNull(offHeapStore.allocate(buildContent(300, (byte) 1)));
+        assertEquals(1, offHeapStore.getAllocationFailureCount());
+        assertEquals(0, offHeapStore.getReservedBytes());
+        assertEquals(0, offHeapStore.getBlockCount());
+    }
+
+    @Test
+    public void nullContentIsNotStored() {
+        assertNull(offHeapStore.allocate(null));
+        assertEquals(0, offHeapStore.getAllocationFailureCount());
+    }
+
+    @Test
+    public void memorySizeOptionsAreParsed() {
+        assertEquals(4096, VirtualDBCacheOffHeapStore.parseMemorySize("4096"));
+        assertEquals(64L * 1024, VirtualDBCacheOffHeapStore.parseMemorySize("64k"));
+        assertEquals(512L * 1024 * 1024, VirtualDBCacheOffHeapStore.parseMemorySize("512M"));
+        assertEquals(2L * 1024 * 1024 * 1024, VirtualDBCacheOffHeapStore.parseMemorySize("2g"));
+        assertEquals(-1, VirtualDBCacheOffHeapStore.parseMemorySize("lots"));
+        assertEquals(-1, VirtualDBCacheOffHeapStore.parseMemorySize(""));
+    }
+
+    @Test
+    public void directMemoryLimitDefaultsToTheMaximumHeap() {
+        // Unless -XX:MaxDirectMemorySize was given to the test JVM
+        assertTrue(VirtualDBCacheOffHeapStore.resolveDirectMemoryLimit() > 0);
+    }
+
+    private byte[] buildContent(int length, byte value) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, value);
+        content[0] = (byte) (value + 1);
+        return (content);
+    }
+}
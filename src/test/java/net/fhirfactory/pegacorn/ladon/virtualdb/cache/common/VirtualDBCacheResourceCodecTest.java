@@ -0,0 +1,76 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBCacheResourceCodecTest {
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private VirtualDBCacheResourceCodec codec;
+    private Patient patient;
+
+    @Before
+    public void setUp() {
+        codec = new VirtualDBCacheResourceCodec(FHIR_CONTEXT::newJsonParser);
+        patient = new Patient();
+        patient.setId("Patient/p1");
+        patient.getMeta().setVersionId("3").addTag("http://example.org/tags", "root", null);
+        patient.setActive(true);
+        Organization organization = new Organization();
+        organization.setId("#o1");
+        organization.setName("Hospital 1");
+        organization.getMeta().addTag("http://example.org/tags", "contained-organization", null);
+        patient.addContained(organization);
+        patient.setManagingOrganization(new Reference("#o1"));
+        Patient linkedPatient = new Patient();
+        linkedPatient.setId("#p2");
+        linkedPatient.getMeta().addTag("http://example.org/tags", "contained-patient", null);
+        patient.addContained(linkedPatient);
+        patient.addLink().setOther(new Reference("#p2"));
+    }
+
+    @Test
+    public void contentLeavesOutOnlyTheRootMeta() {
+        String encodedContent = codec.encodeContent(patient);
+        assertFalse(encodedContent.contains("\"versionId\""));
+        assertFalse(encodedContent.contains("\"root\""));
+        assertTrue(encodedContent.contains("\"contained-organization\""));
+        assertTrue(encodedContent.contains("\"contained-patient\""));
+    }
+
+    @Test
+    public void compressedRoundTripGivesBackTheCachedResource() {
+        String encodedContent = codec.encodeContent(patient);
+        VirtualDBCacheCompressedResourceHolder holder = new VirtualDBCacheCompressedResourceHolder(codec.compress(encodedContent), encodedContent.getBytes(StandardCharsets.UTF_8).length, patient.getMeta().copy(), codec);
+        Patient decoded = (Patient) holder.getResource();
+        assertTrue(patient.equalsDeep(decoded));
+        assertEquals("3", decoded.getMeta().getVersionId());
+        assertEquals(2, decoded.getContained().size());
+        for (Resource containedResource : decoded.getContained()) {
+            assertTrue(containedResource.getMeta().hasTag());
+        }
+    }
+
+    @Test
+    public void digestIgnoresTheRootMetaButNotContainedMeta() {
+        byte[] digest = codec.computeContentDigest(patient);
+        Patient newVersion = patient.copy();
+        newVersion.getMeta().setVersionId("4");
+        assertTrue(VirtualDBCacheResourceCodec.isSameContent(digest, codec.computeContentDigest(newVersion)));
+        Patient containedChange = patient.copy();
+        containedChange.getContained().get(0).getMeta().addTag("http://example.org/tags", "added", null);
+        assertFalse(VirtualDBCacheResourceCodec.isSameContent(digest, codec.computeContentDigest(containedChange)));
+    }
+}
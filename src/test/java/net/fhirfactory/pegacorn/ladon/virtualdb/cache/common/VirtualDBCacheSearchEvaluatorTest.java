@@ -0,0 +1,145 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the answers the VirtualDBCacheSearchEvaluator gives from a (complete) cache are those the
+ * Sources-of-Truth would give under the FHIR search semantics - and that it declines (returns null) whenever it
+ * can't guarantee that.
+ */
+public class VirtualDBCacheSearchEvaluatorTest {
+
+    private static final String IDENTIFIER_SYSTEM = "http://example.org/location-ids";
+
+    private SearchNameEnum allowedSearch;
+    private VirtualDBCacheSearchEvaluator evaluator;
+    private List<Resource> candidates;
+    private Location wardA;
+    private Location wardB;
+    private Location theatre;
+
+    @Before
+    public void setUp() {
+        allowedSearch = SearchNameEnum.values()[0];
+        evaluator = new VirtualDBCacheSearchEvaluator(Collections.singleton(allowedSearch));
+        wardA = buildLocation("wardA", "WA", IDENTIFIER_SYSTEM, "Ward A", "Organization/hospital1");
+        wardB = buildLocation("wardB", "WB", null, "Ward B", "Organization/hospital2");
+        theatre = buildLocation("theatre", "TH", IDENTIFIER_SYSTEM, "Theatre", "Organization/hospital1");
+        theatre.setType(Collections.singletonList(new CodeableConcept().addCoding(new Coding("http://terminology.hl7.org/CodeSystem/v3-RoleCode", "OR", "Operating Room"))));
+        candidates = Arrays.asList(wardA, wardB, theatre);
+    }
+
+    @Test
+    public void searchNotOnTheAllowlistIsLeftToTheSourcesOfTruth() {
+        VirtualDBCacheSearchEvaluator defaultEvaluator = new VirtualDBCacheSearchEvaluator();
+        assertFalse(defaultEvaluator.isEvaluableSearch(allowedSearch));
+        assertNull(defaultEvaluator.evaluate(allowedSearch, candidates, criteria("identifier", "WA")));
+        assertNull(evaluator.evaluate(null, candidates, criteria("identifier", "WA")));
+    }
+
+    @Test
+    public void identifierTokenMatchesCodeAlone() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", "WA")), wardA);
+    }
+
+    @Test
+    public void identifierTokenMatchesSystemAndCode() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", IDENTIFIER_SYSTEM + "|WA")), wardA);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", "http://other.org|WA")));
+    }
+
+    @Test
+    public void identifierTokenWithEmptySystemOnlyMatchesIdentifiersWithoutASystem() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", "|WB")), wardB);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", "|WA")));
+    }
+
+    @Test
+    public void identifierTokenWithSystemOnlyMatchesAnyCodeInTheSystem() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("identifier", IDENTIFIER_SYSTEM + "|")), wardA, theatre);
+    }
+
+    @Test
+    public void codeableConceptTokenMatchesAnyCoding() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("type", "OR")), theatre);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("type", "http://terminology.hl7.org/CodeSystem/v3-RoleCode|OR")), theatre);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("type", "or")));
+    }
+
+    @Test
+    public void referenceMatchesTypedOrPlainId() {
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("managingOrganization", "Organization/hospital1")), wardA, theatre);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("managingOrganization", "hospital2")), wardB);
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, criteria("managingOrganization", "Practitioner/hospital2")));
+    }
+
+    @Test
+    public void allCriteriaMustMatch() {
+        Map<Property, Serializable> parameterSet = criteria("identifier", IDENTIFIER_SYSTEM + "|");
+        parameterSet.put(buildProperty("managingOrganization"), "Organization/hospital1");
+        parameterSet.put(buildProperty("type"), "OR");
+        assertMatches(evaluator.evaluate(allowedSearch, candidates, parameterSet), theatre);
+    }
+
+    @Test
+    public void stringElementIsLeftToTheSourcesOfTruth() {
+        // FHIR string search is a case and accent insensitive "starts with" match, so the cache doesn't attempt it
+        assertNull(evaluator.evaluate(allowedSearch, candidates, criteria("name", "Ward")));
+    }
+
+    @Test
+    public void unknownElementIsLeftToTheSourcesOfTruth() {
+        assertNull(evaluator.evaluate(allowedSearch, candidates, criteria("noSuchElement", "x")));
+    }
+
+    @Test
+    public void noCandidatesGivesAnEmptyAnswer() {
+        List<Resource> matches = evaluator.evaluate(allowedSearch, new ArrayList<>(), criteria("identifier", "WA"));
+        assertTrue(matches != null && matches.isEmpty());
+    }
+
+    private Location buildLocation(String id, String identifierValue, String identifierSystem, String name, String managingOrganization) {
+        Location location = new Location();
+        location.setId("Location/" + id);
+        location.addIdentifier().setSystem(identifierSystem).setValue(identifierValue);
+        location.setName(name);
+        location.setManagingOrganization(new Reference(managingOrganization));
+        return (location);
+    }
+
+    private Property buildProperty(String name) {
+        return (new Property(name, "", "", 0, Integer.MAX_VALUE, new ArrayList<Base>()));
+    }
+
+    private Map<Property, Serializable> criteria(String name, String value) {
+        Map<Property, Serializable> parameterSet = new HashMap<>();
+        parameterSet.put(buildProperty(name), value);
+        return (parameterSet);
+    }
+
+    private void assertMatches(List<Resource> matches, Resource... expected) {
+        assertEquals(Arrays.asList(expected), matches);
+    }
+}
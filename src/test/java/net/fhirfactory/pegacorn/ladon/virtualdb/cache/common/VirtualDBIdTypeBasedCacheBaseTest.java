@@ -0,0 +1,57 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBIdTypeBasedCacheBaseTest {
+
+    private VirtualDBTestLocationCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new VirtualDBTestLocationCache();
+    }
+
+    @Test
+    public void completeLoadMarksTheCacheComplete() {
+        long loadToken = cache.beginCompleteLoad();
+        assertFalse(cache.isCacheComplete());
+        assertTrue(cache.markCacheComplete(loadToken));
+        assertTrue(cache.isCacheComplete());
+    }
+
+    @Test
+    public void invalidationDuringTheLoadPreventsMarkingComplete() {
+        long loadToken = cache.beginCompleteLoad();
+        cache.invalidateResource(null, null);
+        assertFalse(cache.markCacheComplete(loadToken));
+        assertFalse(cache.isCacheComplete());
+    }
+
+    @Test
+    public void invalidationAfterMarkingCompleteClearsCompleteness() {
+        assertTrue(cache.markCacheComplete(cache.beginCompleteLoad()));
+        cache.invalidateResource(null, null);
+        assertFalse(cache.isCacheComplete());
+        // A token from before the invalidation can't restore it
+        long staleToken = cache.beginCompleteLoad() - 1;
+        assertFalse(cache.markCacheComplete(staleToken));
+        assertFalse(cache.isCacheComplete());
+    }
+
+    @Test
+    public void concurrentInvalidationAlwaysWins() throws InterruptedException {
+        for (int round = 0; round < 2000; round++) {
+            long loadToken = cache.beginCompleteLoad();
+            Thread invalidator = new Thread(() -> cache.invalidateResource(null, null));
+            invalidator.start();
+            cache.markCacheComplete(loadToken);
+            invalidator.join();
+            // Whichever order they ran in, the invalidation happened after the load began
+            assertFalse("Cache left complete after an invalidation in round " + round, cache.isCacheComplete());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.hl7.fhir.r4.model.Identifier;
+import org.junit.Test;
+
+public class VirtualDBIdentifierKeyTest {
+
+    @Test
+    public void equalIdentifiersGiveEqualKeys() {
+        Identifier identifierA = new Identifier().setSystem("http://example.org/mrn").setValue("12345");
+        Identifier identifierB = new Identifier().setSystem("http://example.org/mrn").setValue("12345");
+        VirtualDBIdentifierKey keyA = VirtualDBIdentifierKey.fromIdentifier(identifierA);
+        VirtualDBIdentifierKey keyB = VirtualDBIdentifierKey.fromIdentifier(identifierB);
+        assertEquals(keyA, keyB);
+        assertEquals(keyA.hashCode(), keyB.hashCode());
+    }
+
+    @Test
+    public void systemAndValueAreTrimmed() {
+        VirtualDBIdentifierKey key = new VirtualDBIdentifierKey(" http://example.org/mrn ", " 12345 ");
+        assertEquals(new VirtualDBIdentifierKey("http://example.org/mrn", "12345"), key);
+        assertEquals("http://example.org/mrn|12345", key.toString());
+    }
+
+    @Test
+    public void systemIsInterned() {
+        VirtualDBIdentifierKey keyA = new VirtualDBIdentifierKey(new String("http://example.org/mrn"), "1");
+        VirtualDBIdentifierKey keyB = new VirtualDBIdentifierKey(new String("http://example.org/mrn"), "2");
+        assertSame(keyA.getSystem(), keyB.getSystem());
+    }
+
+    @Test
+    public void differentSystemsOrValuesGiveDifferentKeys() {
+        VirtualDBIdentifierKey key = new VirtualDBIdentifierKey("http://example.org/mrn", "12345");
+        assertNotEquals(key, new VirtualDBIdentifierKey("http://example.org/other", "12345"));
+        assertNotEquals(key, new VirtualDBIdentifierKey("http://example.org/mrn", "54321"));
+        assertNotEquals(key, new VirtualDBIdentifierKey(null, "12345"));
+    }
+
+    @Test
+    public void missingSystemIsTheEmptySystem() {
+        VirtualDBIdentifierKey key = VirtualDBIdentifierKey.fromIdentifier(new Identifier().setValue("12345"));
+        assertEquals("", key.getSystem());
+        assertEquals(new VirtualDBIdentifierKey(null, "12345"), key);
+    }
+
+    @Test
+    public void identifierWithoutAValueHasNoKey() {
+        assertNull(VirtualDBIdentifierKey.fromIdentifier(new Identifier().setSystem("http://example.org/mrn")));
+        assertNull(VirtualDBIdentifierKey.fromIdentifier(null));
+    }
+}
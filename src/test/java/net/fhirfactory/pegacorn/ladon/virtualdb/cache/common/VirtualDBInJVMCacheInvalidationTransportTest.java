@@ -0,0 +1,158 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exercises the in-JVM transport directly, and as the link between two VirtualDBCacheInvalidationServices standing
+ * in for two Ladon nodes.
+ */
+public class VirtualDBInJVMCacheInvalidationTransportTest {
+
+    private List<Consumer<VirtualDBCacheInvalidationMessage>> channel;
+
+    @Before
+    public void setUp() {
+        channel = VirtualDBInJVMCacheInvalidationTransport.newChannel();
+    }
+
+    @Test
+    public void messageReachesEverySubscriberOnTheChannel() {
+        VirtualDBInJVMCacheInvalidationTransport publisher = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        VirtualDBInJVMCacheInvalidationTransport receiver = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        List<VirtualDBCacheInvalidationMessage> receivedA = new ArrayList<>();
+        List<VirtualDBCacheInvalidationMessage> receivedB = new ArrayList<>();
+        receiver.subscribe(receivedA::add);
+        receiver.subscribe(receivedB::add);
+        publisher.publish(new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p1", null));
+        assertEquals(1, receivedA.size());
+        assertEquals(1, receivedB.size());
+        assertEquals("node-1", receivedA.get(0).getOriginNodeId());
+        assertEquals("Patient", receivedB.get(0).getResourceType());
+        assertEquals("p1", receivedB.get(0).getResourceIdPart());
+    }
+
+    @Test
+    public void subscriberCannotAlterWhatTheOthersReceive() {
+        VirtualDBInJVMCacheInvalidationTransport transport = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        List<VirtualDBCacheInvalidationMessage> received = new ArrayList<>();
+        transport.subscribe(message -> {
+            message.getIdentifiers().get(0).setValue("altered");
+            message.getIdentifiers().clear();
+            message.setResourceIdPart("altered");
+        });
+        transport.subscribe(received::add);
+        VirtualDBCacheInvalidationMessage message = new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p1", Arrays.asList(new Identifier().setValue("12345")));
+        transport.publish(message);
+        assertEquals("p1", received.get(0).getResourceIdPart());
+        assertEquals(1, received.get(0).getIdentifiers().size());
+        assertEquals("12345", received.get(0).getIdentifiers().get(0).getValue());
+        assertEquals("12345", message.getIdentifiers().get(0).getValue());
+    }
+
+    @Test
+    public void separateChannelsAreIsolated() {
+        VirtualDBInJVMCacheInvalidationTransport publisher = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        VirtualDBInJVMCacheInvalidationTransport otherTransport = new VirtualDBInJVMCacheInvalidationTransport(VirtualDBInJVMCacheInvalidationTransport.newChannel());
+        List<VirtualDBCacheInvalidationMessage> received = new ArrayList<>();
+        otherTransport.subscribe(received::add);
+        publisher.publish(new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p1", null));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void subscriberIsAddedOnceAndCanUnsubscribe() {
+        VirtualDBInJVMCacheInvalidationTransport transport = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        List<VirtualDBCacheInvalidationMessage> received = new ArrayList<>();
+        Consumer<VirtualDBCacheInvalidationMessage> subscriber = received::add;
+        transport.subscribe(subscriber);
+        transport.subscribe(subscriber);
+        transport.publish(new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p1", null));
+        assertEquals(1, received.size());
+        transport.unsubscribe(subscriber);
+        transport.publish(new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p2", null));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void failingSubscriberDoesNotStopDelivery() {
+        VirtualDBInJVMCacheInvalidationTransport transport = new VirtualDBInJVMCacheInvalidationTransport(channel);
+        List<VirtualDBCacheInvalidationMessage> received = new ArrayList<>();
+        transport.subscribe(message -> {
+            throw new IllegalStateException("subscriber failure");
+        });
+        transport.subscribe(received::add);
+        transport.publish(new VirtualDBCacheInvalidationMessage("node-1", "Patient", "p1", null));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void invalidationReachesThePeerNodesCacheOnly() {
+        VirtualDBCacheInvalidationService nodeA = new VirtualDBCacheInvalidationService();
+        VirtualDBCacheInvalidationService nodeB = new VirtualDBCacheInvalidationService();
+        nodeA.setTransport(new VirtualDBInJVMCacheInvalidationTransport(channel));
+        nodeB.setTransport(new VirtualDBInJVMCacheInvalidationTransport(channel));
+        RecordingCache cacheA = new RecordingCache("Patient");
+        RecordingCache cacheB = new RecordingCache("Patient");
+        RecordingCache otherTypeCacheB = new RecordingCache("Practitioner");
+        nodeA.registerCache(cacheA);
+        nodeB.registerCache(cacheB);
+        nodeB.registerCache(otherTypeCacheB);
+        Identifier mrn = new Identifier().setSystem("http://example.org/mrn").setValue("12345");
+
+        nodeA.publishInvalidation("Patient", new IdType("Patient", "p1"), Arrays.asList(mrn));
+
+        // The publishing node's own cache is left alone, it has already been updated
+        assertTrue(cacheA.invalidatedIds.isEmpty());
+        assertTrue(otherTypeCacheB.invalidatedIds.isEmpty());
+        assertEquals(1, cacheB.invalidatedIds.size());
+        assertEquals("Patient/p1", cacheB.invalidatedIds.get(0).getValue());
+        assertEquals(1, cacheB.invalidatedIdentifiers.get(0).size());
+        assertEquals("12345", cacheB.invalidatedIdentifiers.get(0).get(0).getValue());
+    }
+
+    @Test
+    public void invalidationWithoutAnIdStillCarriesTheIdentifiers() {
+        VirtualDBCacheInvalidationService nodeA = new VirtualDBCacheInvalidationService();
+        VirtualDBCacheInvalidationService nodeB = new VirtualDBCacheInvalidationService();
+        nodeA.setTransport(new VirtualDBInJVMCacheInvalidationTransport(channel));
+        nodeB.setTransport(new VirtualDBInJVMCacheInvalidationTransport(channel));
+        RecordingCache cacheB = new RecordingCache("Patient");
+        nodeB.registerCache(cacheB);
+
+        nodeA.publishInvalidation("Patient", null, Arrays.asList(new Identifier().setValue("12345")));
+
+        assertEquals(1, cacheB.invalidatedIds.size());
+        assertNull(cacheB.invalidatedIds.get(0));
+        assertEquals(1, cacheB.invalidatedIdentifiers.get(0).size());
+    }
+
+    /**
+     * Records the invalidations applied to it, rather than holding any Resources.
+     */
+    private static class RecordingCache extends VirtualDBTestLocationCache {
+        private List<IdType> invalidatedIds = new ArrayList<>();
+        private List<List<Identifier>> invalidatedIdentifiers = new ArrayList<>();
+
+        RecordingCache(String cacheClassName) {
+            super(cacheClassName);
+        }
+
+        @Override
+        public void invalidateResource(IdType id, List<Identifier> identifiers) {
+            invalidatedIds.add(id);
+            invalidatedIdentifiers.add(identifiers);
+        }
+    }
+}
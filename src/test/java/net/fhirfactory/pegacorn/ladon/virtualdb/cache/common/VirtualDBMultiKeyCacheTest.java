@@ -0,0 +1,131 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBMultiKeyCacheTest {
+
+    private static final VirtualDBIdentifierKey MRN = new VirtualDBIdentifierKey("http://example.org/mrn", "12345");
+    private static final VirtualDBIdentifierKey NATIONAL_ID = new VirtualDBIdentifierKey("http://example.org/national-id", "AB-987");
+
+    private VirtualDBMultiKeyCache cache;
+    private IdType patientId;
+
+    @Before
+    public void setUp() {
+        cache = new VirtualDBMultiKeyCache();
+        patientId = new IdType("Patient", "p1");
+    }
+
+    @Test
+    public void entryIsFoundByEachOfItsIdentifiers() {
+        VirtualDBCacheEntry entry = buildEntry(Arrays.asList(MRN, NATIONAL_ID), new ArrayList<>());
+        cache.put(patientId, entry);
+        assertSame(entry, cache.get(patientId));
+        assertSame(entry, cache.getByIdentifierKey(MRN));
+        assertSame(entry, cache.getByIdentifierKey(new VirtualDBIdentifierKey("http://example.org/national-id", "AB-987")));
+        assertEquals(patientId, cache.resolveId(MRN));
+    }
+
+    @Test
+    public void unknownIdentifierIsNotFound() {
+        cache.put(patientId, buildEntry(Arrays.asList(MRN), new ArrayList<>()));
+        assertNull(cache.getByIdentifierKey(NATIONAL_ID));
+        assertNull(cache.getByIdentifierKey(null));
+    }
+
+    @Test
+    public void removedEntryIsNoLongerFoundByIdentifier() {
+        VirtualDBCacheEntry entry = buildEntry(Arrays.asList(MRN, NATIONAL_ID), new ArrayList<>());
+        cache.put(patientId, entry);
+        assertSame(entry, cache.remove(patientId, null));
+        assertNull(cache.get(patientId));
+        assertNull(cache.getByIdentifierKey(MRN));
+        assertNull(cache.resolveId(NATIONAL_ID));
+    }
+
+    @Test
+    public void staleIndexEntryIsDroppedOnLookup() {
+        VirtualDBCacheEntry entry = buildEntry(Arrays.asList(MRN), new ArrayList<>());
+        cache.put(patientId, entry);
+        // Removed from the id map behind the index's back, as a backing map's own eviction would be
+        cache.values().clear();
+        assertNull(cache.getByIdentifierKey(MRN));
+        assertNull(cache.resolveId(MRN));
+    }
+
+    @Test
+    public void replacementKeepsSharedIdentifiersAndDropsOldOnes() {
+        VirtualDBCacheEntry originalEntry = buildEntry(Arrays.asList(MRN, NATIONAL_ID), new ArrayList<>());
+        cache.put(patientId, originalEntry);
+        VirtualDBCacheEntry replacementEntry = buildEntry(Arrays.asList(MRN), new ArrayList<>());
+        assertSame(originalEntry, cache.put(patientId, replacementEntry));
+        assertSame(replacementEntry, cache.getByIdentifierKey(MRN));
+        assertNull(cache.getByIdentifierKey(NATIONAL_ID));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void conditionalRemoveOnlyRemovesTheExpectedEntry() {
+        VirtualDBCacheEntry originalEntry = buildEntry(Arrays.asList(MRN), new ArrayList<>());
+        cache.put(patientId, originalEntry);
+        VirtualDBCacheEntry replacementEntry = buildEntry(Arrays.asList(MRN), new ArrayList<>());
+        cache.put(patientId, replacementEntry);
+        assertNull(cache.remove(patientId, originalEntry));
+        assertSame(replacementEntry, cache.getByIdentifierKey(MRN));
+    }
+
+    @Test
+    public void referencingEntriesAreFoundByTheReferencedId() {
+        IdType organizationId = new IdType("Organization", "o1");
+        IdType otherPatientId = new IdType("Patient", "p2");
+        cache.put(patientId, buildEntry(Arrays.asList(MRN), Arrays.asList(organizationId)));
+        cache.put(otherPatientId, buildEntry(Arrays.asList(NATIONAL_ID), Arrays.asList(organizationId)));
+        List<IdType> referencingIds = cache.getReferencingIds(organizationId);
+        assertEquals(2, referencingIds.size());
+        assertTrue(referencingIds.containsAll(Arrays.asList(patientId, otherPatientId)));
+        cache.put(otherPatientId, buildEntry(Arrays.asList(NATIONAL_ID), new ArrayList<>()));
+        assertEquals(Arrays.asList(patientId), cache.getReferencingIds(organizationId));
+        cache.remove(patientId, null);
+        assertTrue(cache.getReferencingIds(organizationId).isEmpty());
+    }
+
+    @Test
+    public void lateEvictionLeavesTheReCachedEntryIndexed() {
+        IdType organizationId = new IdType("Organization", "o1");
+        VirtualDBCacheEntry evictedEntry = buildEntry(Arrays.asList(MRN, NATIONAL_ID), Arrays.asList(organizationId));
+        cache.put(patientId, evictedEntry);
+        VirtualDBCacheEntry reCachedEntry = buildEntry(Arrays.asList(MRN), Arrays.asList(organizationId));
+        cache.put(patientId, reCachedEntry);
+        // The backing map's eviction notification for the original entry only arrives now
+        cache.onEntryEvicted(patientId, evictedEntry);
+        assertSame(reCachedEntry, cache.getByIdentifierKey(MRN));
+        assertNull(cache.getByIdentifierKey(NATIONAL_ID));
+        assertEquals(Arrays.asList(patientId), cache.getReferencingIds(organizationId));
+    }
+
+    @Test
+    public void evictionOfTheLiveEntryLeavesItsIndexAlone() {
+        VirtualDBCacheEntry entry = buildEntry(Arrays.asList(MRN), new ArrayList<>());
+        cache.put(patientId, entry);
+        cache.onEntryEvicted(patientId, entry);
+        assertSame(entry, cache.getByIdentifierKey(MRN));
+    }
+
+    private VirtualDBCacheEntry buildEntry(List<VirtualDBIdentifierKey> identifierKeys, List<IdType> referencedIds) {
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        return (new VirtualDBCacheEntry(new VirtualDBCacheObjectResourceHolder(patient), 0L, Long.MAX_VALUE, 1, identifierKeys, referencedIds, null));
+    }
+}
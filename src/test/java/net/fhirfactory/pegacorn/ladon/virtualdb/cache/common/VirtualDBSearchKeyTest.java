@@ -0,0 +1,96 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBSearchKeyTest {
+
+    private SearchNameEnum searchName;
+
+    @Before
+    public void setUp() {
+        searchName = SearchNameEnum.values()[0];
+    }
+
+    @Test
+    public void criteriaOrderDoesNotMatter() {
+        Map<Property, Serializable> parameterSetA = new LinkedHashMap<>();
+        parameterSetA.put(buildProperty("identifier"), "12345");
+        parameterSetA.put(buildProperty("organization"), "Organization/o1");
+        Map<Property, Serializable> parameterSetB = new LinkedHashMap<>();
+        parameterSetB.put(buildProperty("organization"), "Organization/o1");
+        parameterSetB.put(buildProperty("identifier"), "12345");
+        VirtualDBSearchKey keyA = VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, parameterSetA);
+        VirtualDBSearchKey keyB = VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, parameterSetB);
+        assertEquals(keyA, keyB);
+        assertEquals(keyA.hashCode(), keyB.hashCode());
+        assertEquals("identifier=12345&organization=Organization/o1", keyA.getCriteria());
+    }
+
+    @Test
+    public void fhirElementValuesAreCanonicalised() {
+        assertEquals("identifier=http://example.org/mrn|12345", criteriaFor("identifier", new Identifier().setSystem(" http://example.org/mrn ").setValue("12345")));
+        assertEquals("organization=Organization/o1", criteriaFor("organization", new Reference("Organization/o1")));
+        assertEquals("name=Smith", criteriaFor("name", new StringType("Smith")));
+        assertEquals("name=Smith", criteriaFor("name", " Smith "));
+    }
+
+    @Test
+    public void differentSearchesGiveDifferentKeys() {
+        VirtualDBSearchKey key = VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("identifier", "12345"));
+        assertNotEquals(key, VirtualDBSearchKey.fromSearch(ResourceType.Practitioner, searchName, criteria("identifier", "12345")));
+        assertNotEquals(key, VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("identifier", "54321")));
+        assertNotEquals(key, VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("other", "12345")));
+    }
+
+    @Test
+    public void separatorsWithinValuesCannotCollide() {
+        Map<Property, Serializable> singleCriterion = criteria("name", "a&given=b");
+        Map<Property, Serializable> twoCriteria = criteria("name", "a");
+        twoCriteria.put(buildProperty("given"), "b");
+        VirtualDBSearchKey singleCriterionKey = VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, singleCriterion);
+        assertNotEquals(singleCriterionKey, VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, twoCriteria));
+        assertEquals("name=a%26given%3Db", singleCriterionKey.getCriteria());
+        assertNotEquals(singleCriterionKey, VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("name", "a%26given%3Db")));
+    }
+
+    @Test
+    public void uncanonicalisableSearchHasNoKey() {
+        assertNull(VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("type", new CodeableConcept().setText("x"))));
+        assertNull(VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("identifier", new Identifier().setSystem("http://example.org/mrn"))));
+        assertNull(VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria("identifier", null)));
+        assertNull(VirtualDBSearchKey.fromSearch(ResourceType.Patient, null, criteria("identifier", "12345")));
+        assertNull(VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, null));
+    }
+
+    private String criteriaFor(String name, Serializable value) {
+        return (VirtualDBSearchKey.fromSearch(ResourceType.Patient, searchName, criteria(name, value)).getCriteria());
+    }
+
+    private Map<Property, Serializable> criteria(String name, Serializable value) {
+        Map<Property, Serializable> parameterSet = new LinkedHashMap<>();
+        parameterSet.put(buildProperty(name), value);
+        return (parameterSet);
+    }
+
+    private Property buildProperty(String name) {
+        return (new Property(name, "", "", 0, Integer.MAX_VALUE, new ArrayList<Base>()));
+    }
+}
@@ -0,0 +1,58 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualDBSearchResultCacheTest {
+
+    private VirtualDBSearchKey searchKey;
+    private List<IdType> resultIds;
+
+    @Before
+    public void setUp() {
+        Map<Property, Serializable> parameterSet = new HashMap<>();
+        parameterSet.put(new Property("identifier", "", "", 0, Integer.MAX_VALUE, new ArrayList<Base>()), "12345");
+        searchKey = VirtualDBSearchKey.fromSearch(ResourceType.Patient, SearchNameEnum.values()[0], parameterSet);
+        resultIds = Arrays.asList(new IdType("Patient", "p1"), new IdType("Patient", "p2"));
+    }
+
+    @Test
+    public void storedResultIsReturned() {
+        VirtualDBSearchResultCache searchResultCache = new VirtualDBSearchResultCache(10, 60);
+        searchResultCache.putResultIds(searchKey, resultIds, searchResultCache.beginSearch());
+        assertEquals(resultIds, searchResultCache.getResultIds(searchKey));
+    }
+
+    @Test
+    public void invalidationDuringTheSearchPreventsStoringItsResult() {
+        VirtualDBSearchResultCache searchResultCache = new VirtualDBSearchResultCache(10, 60);
+        long searchToken = searchResultCache.beginSearch();
+        searchResultCache.invalidateAll();
+        searchResultCache.putResultIds(searchKey, resultIds, searchToken);
+        assertNull(searchResultCache.getResultIds(searchKey));
+    }
+
+    @Test
+    public void resultIsRetiredAfterItsRetirementAge() throws InterruptedException {
+        VirtualDBSearchResultCache searchResultCache = new VirtualDBSearchResultCache(10, 1);
+        searchResultCache.putResultIds(searchKey, new ArrayList<>(), searchResultCache.beginSearch());
+        assertEquals(0, searchResultCache.getResultIds(searchKey).size());
+        Thread.sleep(1200);
+        assertNull(searchResultCache.getResultIds(searchKey));
+    }
+}
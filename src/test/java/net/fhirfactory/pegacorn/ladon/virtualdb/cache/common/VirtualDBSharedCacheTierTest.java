@@ -0,0 +1,113 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs two embedded nodes of the shared cache tier within the one JVM (each with its own cache manager, joined to a
+ * cluster of their own) and checks that what one node puts is served by the other.
+ */
+public class VirtualDBSharedCacheTierTest {
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private EmbeddedCacheManager cacheManagerA;
+    private EmbeddedCacheManager cacheManagerB;
+    private VirtualDBSharedCacheTier nodeA;
+    private VirtualDBSharedCacheTier nodeB;
+    private Patient patient;
+
+    @Before
+    public void setUp() {
+        String clusterName = "ladon-virtualdb-test-" + UUID.randomUUID();
+        cacheManagerA = VirtualDBSharedCacheTier.buildCacheManager(clusterName);
+        cacheManagerB = VirtualDBSharedCacheTier.buildCacheManager(clusterName);
+        nodeA = new VirtualDBSharedCacheTier(new VirtualDBCacheResourceCodec(FHIR_CONTEXT::newJsonParser));
+        nodeB = new VirtualDBSharedCacheTier(new VirtualDBCacheResourceCodec(FHIR_CONTEXT::newJsonParser));
+        nodeA.start(cacheManagerA);
+        nodeB.start(cacheManagerB);
+        patient = new Patient();
+        patient.setId("Patient/p1");
+        patient.getMeta().setVersionId("2");
+        patient.addIdentifier().setSystem("http://example.org/mrn").setValue("12345");
+        patient.setActive(true);
+    }
+
+    @After
+    public void tearDown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+        cacheManagerB.stop();
+        cacheManagerA.stop();
+    }
+
+    @Test
+    public void nodesFormOneCluster() {
+        assertTrue(nodeA.isEnabled());
+        assertTrue(nodeB.isEnabled());
+        assertEquals(2, cacheManagerA.getMembers().size());
+        assertEquals(2, cacheManagerB.getMembers().size());
+    }
+
+    @Test
+    public void resourcePutOnOneNodeIsServedByTheOther() {
+        nodeA.putResource(patient, 60);
+        Patient replicated = (Patient) nodeB.getResource("Patient", new IdType("Patient", "p1"));
+        assertNotNull(replicated);
+        assertEquals("p1", replicated.getIdElement().getIdPart());
+        assertEquals("2", replicated.getMeta().getVersionId());
+        assertEquals("12345", replicated.getIdentifierFirstRep().getValue());
+        assertTrue(replicated.getActive());
+        assertEquals(1, nodeA.getEntryCount());
+        assertEquals(1, nodeB.getEntryCount());
+    }
+
+    @Test
+    public void resourceIsKeyedByTypeAndIdPart() {
+        nodeA.putResource(patient, 60);
+        assertNotNull(nodeB.getResource("Patient", new IdType("p1")));
+        assertNotNull(nodeB.getResource("Patient", new IdType("http://example.org/fhir/Patient/p1/_history/2")));
+        assertNull(nodeB.getResource("Practitioner", new IdType("Practitioner", "p1")));
+        assertNull(nodeB.getResource("Patient", new IdType("Patient", "p2")));
+    }
+
+    @Test
+    public void removalOnOneNodeIsReplicated() {
+        nodeA.putResource(patient, 60);
+        nodeB.removeResource("Patient", new IdType("Patient", "p1"));
+        assertNull(nodeA.getResource("Patient", new IdType("Patient", "p1")));
+        assertEquals(0, nodeA.getEntryCount());
+    }
+
+    @Test
+    public void resourceRetiresOnEveryNode() throws InterruptedException {
+        nodeA.putResource(patient, 1);
+        assertNotNull(nodeB.getResource("Patient", new IdType("Patient", "p1")));
+        Thread.sleep(1200);
+        assertNull(nodeA.getResource("Patient", new IdType("Patient", "p1")));
+        assertNull(nodeB.getResource("Patient", new IdType("Patient", "p1")));
+    }
+
+    @Test
+    public void stoppedTierIsDisabled() {
+        nodeB.shutdown();
+        assertFalse(nodeB.isEnabled());
+        nodeB.putResource(patient, 60);
+        assertNull(nodeB.getResource("Patient", new IdType("Patient", "p1")));
+        assertEquals(0, nodeB.getEntryCount());
+        assertEquals(0, nodeA.getEntryCount());
+    }
+}
@@ -0,0 +1,74 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal (Location) cache for tests, which needs none of the injected services for the calls the tests make.
+ * Subclass it to record or replace individual cache operations.
+ */
+public class VirtualDBTestLocationCache extends VirtualDBIdTypeBasedCacheBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBTestLocationCache.class);
+
+    private String cacheClassName;
+
+    public VirtualDBTestLocationCache() {
+        this("TestLocation");
+    }
+
+    public VirtualDBTestLocationCache(String cacheClassName) {
+        this.cacheClassName = cacheClassName;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return (LOG);
+    }
+
+    @Override
+    protected int specifyCacheElementRetirementInSeconds() {
+        return (60);
+    }
+
+    @Override
+    protected boolean specifyCacheCompletenessTracking() {
+        return (true);
+    }
+
+    @Override
+    protected boolean areTheSame(Resource a, Resource b) {
+        return (a.equalsDeep(b));
+    }
+
+    @Override
+    protected List<Identifier> resolveIdentifierSet(Resource resourceToAdd) {
+        if (resourceToAdd instanceof Location) {
+            return (new ArrayList<>(((Location) resourceToAdd).getIdentifier()));
+        }
+        return (new ArrayList<>());
+    }
+
+    @Override
+    protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
+        if (resource instanceof Location) {
+            ((Location) resource).addIdentifier(identifierToAdd);
+        }
+    }
+
+    @Override
+    protected String getCacheClassName() {
+        return (cacheClassName);
+    }
+
+    @Override
+    protected Resource createClonedResource(Resource resource) {
+        return (resource.copy());
+    }
+}
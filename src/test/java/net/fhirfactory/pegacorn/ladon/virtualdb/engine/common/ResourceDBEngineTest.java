@@ -0,0 +1,114 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common.ResourceSoTConduitController;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBTestLocationCache;
+import net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common.PersistenceServiceBase;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ResourceDBEngineTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceDBEngineTest.class);
+
+    private List<Identifier> unknownIdentifiers;
+    private TestLocationDBEngine engine;
+    private Identifier identifier;
+
+    @Before
+    public void setUp() {
+        unknownIdentifiers = new ArrayList<>();
+        engine = new TestLocationDBEngine();
+        identifier = new Identifier().setSystem("http://example.org/location-ids").setValue("WA");
+    }
+
+    @Test
+    public void notFoundReviewPopulatesTheNegativeCache() {
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE, OperationOutcome.IssueType.NOTFOUND));
+        assertEquals(1, unknownIdentifiers.size());
+        assertEquals("WA", unknownIdentifiers.get(0).getValue());
+    }
+
+    @Test
+    public void failedReviewDoesNotPopulateTheNegativeCache() {
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE, OperationOutcome.IssueType.EXCEPTION));
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE, OperationOutcome.IssueType.TIMEOUT));
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE, null));
+        assertTrue(unknownIdentifiers.isEmpty());
+    }
+
+    @Test
+    public void reviewWithoutAResourceDoesNotPopulateTheNegativeCache() {
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FINISH, null));
+        engine.recordUnknownIdentifierIfNotFound(identifier, buildReviewOutcome(VirtualDBActionStatusEnum.REVIEW_FINISH, OperationOutcome.IssueType.INFORMATIONAL));
+        assertTrue(unknownIdentifiers.isEmpty());
+    }
+
+    private VirtualDBMethodOutcome buildReviewOutcome(VirtualDBActionStatusEnum status, OperationOutcome.IssueType issueType) {
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setStatusEnum(status);
+        if (issueType != null) {
+            OperationOutcome operationOutcome = new OperationOutcome();
+            operationOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR).setCode(issueType);
+            outcome.setOperationOutcome(operationOutcome);
+        }
+        return (outcome);
+    }
+
+    /**
+     * An engine over a cache that records the Identifiers added to its negative cache; no other collaborators are
+     * needed for the calls exercised here.
+     */
+    private class TestLocationDBEngine extends ResourceDBEngine {
+        private VirtualDBTestLocationCache cache = new VirtualDBTestLocationCache() {
+            @Override
+            public void recordUnknownIdentifier(Identifier unknownIdentifier) {
+                unknownIdentifiers.add(unknownIdentifier);
+            }
+        };
+
+        @Override
+        protected VirtualDBIdTypeBasedCacheBase specifyDBCache() {
+            return (cache);
+        }
+
+        @Override
+        protected ResourceSoTConduitController specifySourceOfTruthAggregator() {
+            return (null);
+        }
+
+        @Override
+        protected PersistenceServiceBase specifyPersistenceService() {
+            return (null);
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (LOG);
+        }
+
+        @Override
+        protected ResourceType specifyResourceType() {
+            return (ResourceType.Location);
+        }
+
+        @Override
+        protected List<Identifier> resolveIdentifierSet(Resource resource) {
+            return (new ArrayList<>());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+
+public class VirtualDBSingleFlightLoaderTest {
+
+    private static final int WAITER_COUNT = 4;
+
+    @Test
+    public void concurrentLoadsOfAKeyShareOneLoad() throws Exception {
+        VirtualDBSingleFlightLoader<String, Patient> loader = new VirtualDBSingleFlightLoader<>(Patient::copy);
+        AtomicInteger loadCount = new AtomicInteger(0);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        Patient loadedPatient = new Patient();
+        loadedPatient.setId("Patient/p1");
+        ExecutorService executor = Executors.newFixedThreadPool(WAITER_COUNT + 1);
+        try {
+            Future<Patient> leader = executor.submit(() -> loader.load("p1", () -> {
+                loadCount.incrementAndGet();
+                loadStarted.countDown();
+                awaitQuietly(releaseLoad);
+                return (loadedPatient);
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            CountDownLatch waitersStarted = new CountDownLatch(WAITER_COUNT);
+            List<Future<Patient>> waiters = new ArrayList<>();
+            for (int counter = 0; counter < WAITER_COUNT; counter++) {
+                waiters.add(executor.submit(() -> {
+                    waitersStarted.countDown();
+                    return (loader.load("p1", () -> {
+                        loadCount.incrementAndGet();
+                        return (new Patient());
+                    }));
+                }));
+            }
+            assertTrue(waitersStarted.await(5, TimeUnit.SECONDS));
+            // Give the waiters time to join the in-flight load before it completes
+            Thread.sleep(200);
+            releaseLoad.countDown();
+            assertSame(loadedPatient, leader.get(5, TimeUnit.SECONDS));
+            List<Patient> waiterResults = new ArrayList<>();
+            for (Future<Patient> waiter : waiters) {
+                Patient waiterResult = waiter.get(5, TimeUnit.SECONDS);
+                // Each waiter has its own copy, not the leader's (mutable) instance
+                assertNotSame(loadedPatient, waiterResult);
+                assertTrue(loadedPatient.equalsDeep(waiterResult));
+                for (Patient otherResult : waiterResults) {
+                    assertNotSame(otherResult, waiterResult);
+                }
+                waiterResults.add(waiterResult);
+            }
+            assertEquals(1, loadCount.get());
+            assertEquals(0, loader.getInFlightLoadCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void laterLoadStartsAfresh() {
+        VirtualDBSingleFlightLoader<String, String> loader = new VirtualDBSingleFlightLoader<>();
+        assertEquals("first", loader.load("p1", () -> "first"));
+        assertEquals("second", loader.load("p1", () -> "second"));
+        assertEquals(0, loader.getInFlightLoadCount());
+    }
+
+    @Test
+    public void nullResultIsPassedThrough() {
+        VirtualDBSingleFlightLoader<String, Patient> loader = new VirtualDBSingleFlightLoader<>(Patient::copy);
+        assertNull(loader.load("p1", () -> null));
+    }
+
+    @Test
+    public void failedLoadIsRethrownAndForgotten() {
+        VirtualDBSingleFlightLoader<String, String> loader = new VirtualDBSingleFlightLoader<>();
+        try {
+            loader.load("p1", () -> {
+                throw new IllegalStateException("Source of Truth unavailable");
+            });
+            fail("Expected the load's exception");
+        } catch (IllegalStateException ex) {
+            assertEquals("Source of Truth unavailable", ex.getMessage());
+        }
+        assertEquals(0, loader.getInFlightLoadCount());
+        assertEquals("recovered", loader.load("p1", () -> "recovered"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}